@@ -0,0 +1,15 @@
+package com.racofix.basic.things;
+
+import android.app.Application;
+
+import com.racofix.basic.mvp.LogicProviders;
+
+public class ThingsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        //ThingsLogicIndex 由 mvp-compiler 根据 @Implement 生成
+        LogicProviders.installIndex(new ThingsLogicIndex());
+    }
+}
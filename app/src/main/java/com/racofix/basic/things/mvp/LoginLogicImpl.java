@@ -5,6 +5,7 @@ import android.arch.lifecycle.OnLifecycleEvent;
 import android.util.Log;
 
 import com.racofix.basic.mvp.LogicImpl;
+import com.racofix.basic.mvp.LogicTask;
 
 public class LoginLogicImpl extends LogicImpl<LoginLogic.Vo> implements LoginLogic.Logic {
 
@@ -27,6 +28,17 @@ public class LoginLogicImpl extends LogicImpl<LoginLogic.Vo> implements LoginLog
 
     @Override
     public void login(String username, String password) {
-        //dosomething
+        execute(new LogicTask<Void>() {
+            @Override
+            protected Void doInBackground() {
+                //dosomething
+                return null;
+            }
+
+            @Override
+            protected void onResult(Void result) {
+                Log.e("Basic", "login finished");
+            }
+        });
     }
 }
@@ -0,0 +1,11 @@
+package com.racofix.basic.http;
+
+import java.util.List;
+
+public interface StreamCallback<T> {
+    void onPage(List<T> page);
+
+    void onComplete(int total);
+
+    void failure(String message);
+}
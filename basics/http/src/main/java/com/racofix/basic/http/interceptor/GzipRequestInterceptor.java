@@ -0,0 +1,65 @@
+package com.racofix.basic.http.interceptor;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * 请求体长度不小于 minBytes 时用 gzip 压缩, 并设置 Content-Encoding; 需要服务端支持.
+ * 压缩结果先写入内存, 以便带上准确的 Content-Length.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+
+    private final long mMinBytes;
+
+    public GzipRequestInterceptor(long minBytes) {
+        this.mMinBytes = minBytes;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null || request.header("Content-Encoding") != null || body.contentLength() < this.mMinBytes) {
+            return chain.proceed(request);
+        }
+
+        final Buffer compressed = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(compressed));
+        body.writeTo(sink);
+        sink.close();
+        if (compressed.size() >= body.contentLength()) {
+            return chain.proceed(request);
+        }
+
+        final MediaType contentType = body.contentType();
+        RequestBody gzipBody = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return compressed.size();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(compressed.snapshot());
+            }
+        };
+        return chain.proceed(request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), gzipBody)
+                .build());
+    }
+}
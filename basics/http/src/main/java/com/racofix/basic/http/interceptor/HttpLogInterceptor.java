@@ -6,6 +6,12 @@ import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
+/**
+ * 每次请求都格式化并打印全部 header, 只适合调试.
+ *
+ * @deprecated 耗时统计请使用 {@link com.racofix.basic.http.metrics.HttpMetrics}
+ */
+@Deprecated
 public class HttpLogInterceptor implements Interceptor {
 
     @Override
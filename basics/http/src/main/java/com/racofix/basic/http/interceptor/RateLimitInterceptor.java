@@ -0,0 +1,308 @@
+package com.racofix.basic.http.interceptor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * 按 host + path 的客户端自适应限流.
+ * <p>
+ * 每个接口维护一个 AIMD 并发上限: 请求成功且延迟未超过基线的 latencyTolerance 倍时加性增加,
+ * 出现异常、429/503 或延迟过高时乘性减少. 服务端通过 Retry-After 或 DataBody.nextRequestSleepMs
+ * 要求退避时, 之后的请求在本地排队等待, 而不是直接失败. 排队超过 maxQueueMills 后放行.
+ * <p>
+ * 拦截器通过 addNetworkInterceptor 安装, 只统计真正经过网络的请求的延迟和过载, 不会阻塞 OkHttp 的调度线程; 排队由 RealCall 在交给 Dispatcher 之前通过
+ * {@link #acquire(HttpUrl, Runnable)} 完成, 同步请求在调用线程通过 {@link #acquire(HttpUrl)} 等待.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private static final int BASELINE_WINDOW = 100;
+    private static final ScheduledExecutorService sScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RateLimit");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final ConcurrentMap<String, Limit> mLimits = new ConcurrentHashMap<>();
+    private final int mInitialLimit;
+    private final int mMaxLimit;
+    private final double mLatencyTolerance;
+    private final double mBackoffRatio;
+    private final long mMaxQueueMills;
+
+    public RateLimitInterceptor() {
+        this(4, 32, 2.0, 0.5, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    public RateLimitInterceptor(int initialLimit, int maxLimit, double latencyTolerance, double backoffRatio,
+                                long maxQueueMills) {
+        this.mInitialLimit = initialLimit;
+        this.mMaxLimit = maxLimit;
+        this.mLatencyTolerance = latencyTolerance;
+        this.mBackoffRatio = backoffRatio;
+        this.mMaxQueueMills = maxQueueMills;
+    }
+
+    /**
+     * 服务端要求的下次请求间隔
+     */
+    public void hint(HttpUrl url, long sleepMs) {
+        if (sleepMs > 0) {
+            this.limit(url).delay(sleepMs);
+        }
+    }
+
+    /**
+     * 当前并发上限, 便于观察
+     */
+    public int currentLimit(HttpUrl url) {
+        return (int) this.limit(url).limit;
+    }
+
+    /**
+     * 取得许可后执行 task, 需要排队时 task 稍后在限流线程或释放许可的线程上执行, 调用线程不会阻塞.
+     * task 对应的请求结束后必须调用 {@link #release(HttpUrl)}
+     */
+    public void acquire(HttpUrl url, Runnable task) {
+        this.limit(url).acquire(task);
+    }
+
+    /**
+     * 在调用线程等待许可, 用于同步请求
+     */
+    public void acquire(HttpUrl url) throws InterruptedIOException {
+        this.limit(url).acquire();
+    }
+
+    public void release(HttpUrl url) {
+        this.limit(url).release();
+    }
+
+    /**
+     * 需要作为 network interceptor 安装: 缓存命中的响应不经过网络, 不计入延迟基线;
+     * 请求被取消导致的异常也不算过载
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Limit limit = this.limit(chain.request().url());
+        long start = System.nanoTime();
+        Response response = null;
+        try {
+            response = chain.proceed(chain.request());
+            int code = response.code();
+            if (code == 429 || code == 503) {
+                limit.delay(retryAfterMills(response));
+            }
+            return response;
+        } finally {
+            if (response == null) {
+                if (!chain.call().isCanceled()) {
+                    limit.adjust(0, true);
+                }
+            } else if (response.networkResponse() != null || response.cacheResponse() == null) {
+                int code = response.code();
+                limit.adjust(System.nanoTime() - start, code == 429 || code == 503);
+            }
+        }
+    }
+
+    private Limit limit(HttpUrl url) {
+        String key = url.host() + url.encodedPath();
+        Limit limit = this.mLimits.get(key);
+        if (limit == null) {
+            limit = new Limit(this.mInitialLimit);
+            Limit previous = this.mLimits.putIfAbsent(key, limit);
+            if (previous != null) {
+                limit = previous;
+            }
+        }
+        return limit;
+    }
+
+    private static long retryAfterMills(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException ignored) {
+                // HTTP-date 格式不处理
+            }
+        }
+        return 0;
+    }
+
+    private static final class Pending {
+        final Runnable task;
+        final long deadlineMills;
+
+        Pending(Runnable task, long deadlineMills) {
+            this.task = task;
+            this.deadlineMills = deadlineMills;
+        }
+    }
+
+    private final class Limit implements Runnable {
+        volatile double limit;
+        private int inFlight;
+        private long notBeforeMills;
+        private long baselineNanos = Long.MAX_VALUE;
+        private long windowMinNanos = Long.MAX_VALUE;
+        private int samples;
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        /**
+         * 已安排的下一次唤醒时间, 避免每次释放都提交定时任务
+         */
+        private long wakeMills = Long.MAX_VALUE;
+
+        Limit(int initialLimit) {
+            this.limit = initialLimit;
+        }
+
+        void acquire(Runnable task) {
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (!this.pending.isEmpty() || !this.admits(now)) {
+                    this.pending.add(new Pending(task, now + mMaxQueueMills));
+                    this.scheduleWake(now);
+                    return;
+                }
+                this.inFlight++;
+            }
+            task.run();
+        }
+
+        synchronized void acquire() throws InterruptedIOException {
+            long deadline = System.currentTimeMillis() + mMaxQueueMills;
+            try {
+                for (; ; ) {
+                    long now = System.currentTimeMillis();
+                    if (now >= deadline) {
+                        break;
+                    }
+                    if (now < this.notBeforeMills) {
+                        this.wait(Math.min(this.notBeforeMills, deadline) - now);
+                    } else if (this.inFlight >= (int) this.limit) {
+                        this.wait(deadline - now);
+                    } else {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("rate limit wait interrupted");
+            }
+            this.inFlight++;
+        }
+
+        void release() {
+            synchronized (this) {
+                this.inFlight--;
+                this.notifyAll();
+            }
+            this.drain();
+        }
+
+        void adjust(long latencyNanos, boolean overloaded) {
+            synchronized (this) {
+                if (overloaded) {
+                    this.limit = Math.max(1, this.limit * mBackoffRatio);
+                } else {
+                    this.updateBaseline(latencyNanos);
+                    if (latencyNanos > this.baselineNanos * mLatencyTolerance) {
+                        this.limit = Math.max(1, this.limit * mBackoffRatio);
+                    } else {
+                        this.limit = Math.min(mMaxLimit, this.limit + 1 / this.limit);
+                    }
+                }
+                this.notifyAll();
+            }
+            this.drain();
+        }
+
+        synchronized void delay(long sleepMs) {
+            long now = System.currentTimeMillis();
+            this.notBeforeMills = Math.max(this.notBeforeMills, now + sleepMs);
+            this.scheduleWake(now);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                this.wakeMills = Long.MAX_VALUE;
+            }
+            this.drain();
+        }
+
+        /**
+         * 按顺序放行排队的请求, 超过 maxQueueMills 的请求不再等待
+         */
+        private void drain() {
+            List<Runnable> ready = null;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                for (Pending head; (head = this.pending.peek()) != null; ) {
+                    if (!this.admits(now) && head.deadlineMills > now) {
+                        break;
+                    }
+                    this.pending.poll();
+                    this.inFlight++;
+                    if (ready == null) {
+                        ready = new ArrayList<>();
+                    }
+                    ready.add(head.task);
+                }
+                this.scheduleWake(now);
+            }
+            if (ready != null) {
+                for (Runnable task : ready) {
+                    task.run();
+                }
+            }
+        }
+
+        private boolean admits(long now) {
+            return now >= this.notBeforeMills && this.inFlight < (int) this.limit;
+        }
+
+        private void scheduleWake(long now) {
+            Pending head = this.pending.peek();
+            if (head == null) {
+                return;
+            }
+            long wake = now < this.notBeforeMills ? Math.min(this.notBeforeMills, head.deadlineMills) : head.deadlineMills;
+            if (wake < this.wakeMills) {
+                this.wakeMills = wake;
+                sScheduler.schedule(this, Math.max(0, wake - now), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 基线取最近一个窗口内的最小延迟, 网络环境变化后可以重新适应
+         */
+        private void updateBaseline(long latencyNanos) {
+            this.windowMinNanos = Math.min(this.windowMinNanos, latencyNanos);
+            this.baselineNanos = Math.min(this.baselineNanos, latencyNanos);
+            if (++this.samples >= BASELINE_WINDOW) {
+                this.baselineNanos = this.windowMinNanos;
+                this.windowMinNanos = Long.MAX_VALUE;
+                this.samples = 0;
+            }
+        }
+    }
+}
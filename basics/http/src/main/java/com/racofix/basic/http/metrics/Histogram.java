@@ -0,0 +1,92 @@
+package com.racofix.basic.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按2的幂分桶的耗时直方图, 单位微秒, 内存固定. 第 i 个桶统计 [2^(i-1), 2^i) 微秒.
+ */
+public final class Histogram {
+
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumMicros = new AtomicLong();
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        this.mBuckets.incrementAndGet(bucket);
+        this.mCount.incrementAndGet();
+        this.mSumMicros.addAndGet(micros);
+    }
+
+    Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = this.mBuckets.get(i);
+        }
+        return new Snapshot(buckets, this.mCount.get(), this.mSumMicros.get());
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.mBuckets.set(i, 0);
+        }
+        this.mCount.set(0);
+        this.mSumMicros.set(0);
+    }
+
+    public static final class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSumMicros;
+
+        Snapshot(long[] buckets, long count, long sumMicros) {
+            this.mBuckets = buckets;
+            this.mCount = count;
+            this.mSumMicros = sumMicros;
+        }
+
+        public long count() {
+            return this.mCount;
+        }
+
+        public long meanMicros() {
+            return this.mCount == 0 ? 0 : this.mSumMicros / this.mCount;
+        }
+
+        /**
+         * 分位值所在桶的上界, 误差在2倍以内
+         */
+        public long percentileMicros(double percentile) {
+            long total = 0;
+            for (long bucket : this.mBuckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < this.mBuckets.length; i++) {
+                seen += this.mBuckets[i];
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (this.mBuckets.length - 1);
+        }
+
+        public long[] buckets() {
+            return this.mBuckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.mCount + " mean=" + this.meanMicros() + "us p50=" + this.percentileMicros(50)
+                    + "us p95=" + this.percentileMicros(95) + "us";
+        }
+    }
+}
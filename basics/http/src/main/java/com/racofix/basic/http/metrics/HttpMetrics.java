@@ -0,0 +1,313 @@
+package com.racofix.basic.http.metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 基于 OkHttp {@link EventListener} 的请求耗时统计.
+ * <p>
+ * 按 host 记录 DNS、建连、TLS、发送请求、首字节(TTFB)、读取响应体和整个调用的耗时直方图,
+ * 以及连接复用、新建连接和并发超过 maxRequestsPerHost(需要在 Dispatcher 中排队)的次数.
+ * 最多跟踪 maxHosts 个 host, 其余合并到 "other". 未设置给 OkHttpClient 时没有任何开销.
+ */
+public final class HttpMetrics {
+
+    public enum Phase {
+        DNS, CONNECT, TLS, REQUEST, TTFB, BODY, CALL
+    }
+
+    private static final String OTHER_HOST = "other";
+
+    private final ConcurrentMap<String, Host> mHosts = new ConcurrentHashMap<>();
+    private final int mMaxHosts;
+    private final int mMaxRequestsPerHost;
+    private final EventListener.Factory mFactory = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return new CallListener();
+        }
+    };
+
+    public HttpMetrics() {
+        this(32, 5);
+    }
+
+    /**
+     * @param maxRequestsPerHost 与 HttpConfig.maxRequests 中的单 host 并发数一致, 用于统计排队
+     */
+    public HttpMetrics(int maxHosts, int maxRequestsPerHost) {
+        this.mMaxHosts = maxHosts;
+        this.mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public EventListener.Factory eventListenerFactory() {
+        return this.mFactory;
+    }
+
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, Host> entry : this.mHosts.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    public void reset() {
+        for (Host host : this.mHosts.values()) {
+            host.reset();
+        }
+    }
+
+    private Host host(String name) {
+        Host host = this.mHosts.get(name);
+        if (host != null) {
+            return host;
+        }
+        if (this.mHosts.size() >= this.mMaxHosts) {
+            name = OTHER_HOST;
+            host = this.mHosts.get(name);
+            if (host != null) {
+                return host;
+            }
+        }
+        host = new Host();
+        Host previous = this.mHosts.putIfAbsent(name, host);
+        return previous != null ? previous : host;
+    }
+
+    private static final class Host {
+        final Histogram[] phases = new Histogram[Phase.values().length];
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong connectionsReused = new AtomicLong();
+        final AtomicLong connectionsCreated = new AtomicLong();
+        final AtomicLong queued = new AtomicLong();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+
+        Host() {
+            for (int i = 0; i < this.phases.length; i++) {
+                this.phases[i] = new Histogram();
+            }
+        }
+
+        void record(Phase phase, long startNanos) {
+            if (startNanos != 0) {
+                this.phases[phase.ordinal()].record(System.nanoTime() - startNanos);
+            }
+        }
+
+        void start(int maxRequestsPerHost) {
+            this.calls.incrementAndGet();
+            int current = this.inFlight.incrementAndGet();
+            if (current > maxRequestsPerHost) {
+                this.queued.incrementAndGet();
+            }
+            for (int peak = this.peakInFlight.get(); current > peak; peak = this.peakInFlight.get()) {
+                if (this.peakInFlight.compareAndSet(peak, current)) {
+                    break;
+                }
+            }
+        }
+
+        Snapshot snapshot() {
+            Histogram.Snapshot[] phases = new Histogram.Snapshot[this.phases.length];
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = this.phases[i].snapshot();
+            }
+            return new Snapshot(phases, this.calls.get(), this.failures.get(), this.connectionsReused.get(),
+                    this.connectionsCreated.get(), this.queued.get(), this.peakInFlight.get());
+        }
+
+        void reset() {
+            for (Histogram histogram : this.phases) {
+                histogram.reset();
+            }
+            this.calls.set(0);
+            this.failures.set(0);
+            this.connectionsReused.set(0);
+            this.connectionsCreated.set(0);
+            this.queued.set(0);
+            this.peakInFlight.set(this.inFlight.get());
+        }
+    }
+
+    public static final class Snapshot {
+        private final Histogram.Snapshot[] mPhases;
+        public final long calls;
+        public final long failures;
+        public final long connectionsReused;
+        public final long connectionsCreated;
+        /**
+         * 发起时并发已达到 maxRequestsPerHost 的调用数, 反映连接池/调度器饱和
+         */
+        public final long queued;
+        public final int peakInFlight;
+
+        Snapshot(Histogram.Snapshot[] phases, long calls, long failures, long connectionsReused,
+                 long connectionsCreated, long queued, int peakInFlight) {
+            this.mPhases = phases;
+            this.calls = calls;
+            this.failures = failures;
+            this.connectionsReused = connectionsReused;
+            this.connectionsCreated = connectionsCreated;
+            this.queued = queued;
+            this.peakInFlight = peakInFlight;
+        }
+
+        public Histogram.Snapshot phase(Phase phase) {
+            return this.mPhases[phase.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder()
+                    .append("calls=").append(this.calls)
+                    .append(" failures=").append(this.failures)
+                    .append(" reused=").append(this.connectionsReused)
+                    .append(" created=").append(this.connectionsCreated)
+                    .append(" queued=").append(this.queued)
+                    .append(" peakInFlight=").append(this.peakInFlight);
+            for (Phase phase : Phase.values()) {
+                builder.append('\n').append(phase).append(": ").append(this.phase(phase));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 每个调用一个实例, 只保存时间戳, 由 OkHttp 在同一调用内顺序回调
+     */
+    private final class CallListener extends EventListener {
+        private Host host;
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private long requestEnd;
+        private long bodyStart;
+
+        @Override
+        public void callStart(Call call) {
+            this.host = host(call.request().url().host());
+            this.host.start(mMaxRequestsPerHost);
+            this.callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            this.dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            this.host.record(Phase.DNS, this.dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            this.connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            this.secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            this.host.record(Phase.TLS, this.secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            this.host.record(Phase.CONNECT, this.connectStart);
+            this.host.connectionsCreated.incrementAndGet();
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                                  IOException ioe) {
+            this.host.record(Phase.CONNECT, this.connectStart);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (this.connectStart == 0) {
+                this.host.connectionsReused.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            this.connectStart = 0;
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            this.requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            this.requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            this.requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if (this.requestStart != 0) {
+                this.host.phases[Phase.REQUEST.ordinal()].record(this.requestEnd - this.requestStart);
+            }
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            this.host.record(Phase.TTFB, this.requestEnd);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            this.bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            this.host.record(Phase.BODY, this.bodyStart);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            this.host.record(Phase.CALL, this.callStart);
+            this.host.inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            this.host.failures.incrementAndGet();
+            this.host.inFlight.decrementAndGet();
+        }
+    }
+}
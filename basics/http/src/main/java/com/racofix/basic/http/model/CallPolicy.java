@@ -0,0 +1,120 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 接口方法上 {@link Retry}/{@link Hedge}/{@link Deadline} 注解的解析结果, 每个方法一个实例
+ */
+final class CallPolicy {
+
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_LATENCY_SAMPLES = 16;
+    /**
+     * setRemoveOnCancelPolicy 需要 API 21, 每取消这么多个任务主动清理一次队列
+     */
+    private static final int PURGE_INTERVAL = 64;
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger sCanceled = new AtomicInteger();
+
+    static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    final Retry retry;
+    final Hedge hedge;
+    final long deadlineMills;
+
+    private final long[] mLatencies = new long[LATENCY_SAMPLES];
+    private int mLatencyCount;
+    private int mLatencyNext;
+
+    private CallPolicy(Retry retry, Hedge hedge, long deadlineMills) {
+        this.retry = retry;
+        this.hedge = hedge;
+        this.deadlineMills = deadlineMills;
+    }
+
+    /**
+     * 没有任何策略注解时返回 null
+     */
+    static CallPolicy from(Annotation[] annotations) {
+        Retry retry = null;
+        Hedge hedge = null;
+        long deadlineMills = 0;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Retry) {
+                retry = (Retry) annotation;
+            } else if (annotation instanceof Hedge) {
+                hedge = (Hedge) annotation;
+            } else if (annotation instanceof Deadline) {
+                deadlineMills = ((Deadline) annotation).value();
+            }
+        }
+        if (retry == null && hedge == null && deadlineMills <= 0) {
+            return null;
+        }
+        return new CallPolicy(retry, hedge, deadlineMills);
+    }
+
+    static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    static boolean isRetryable(int code) {
+        return code == 408 || code >= 500;
+    }
+
+    /**
+     * 第 retries 次重试前的等待时间, 采用 full jitter
+     */
+    long backoffMills(int retries) {
+        long cap = Math.min(this.retry.maxDelayMills(), this.retry.baseDelayMills() << Math.min(retries, 20));
+        return cap <= 0 ? 0 : (long) (RANDOM.nextDouble() * (cap + 1));
+    }
+
+    /**
+     * 取消定时任务, 已取消的任务累积到一定数量后从队列中移除, 避免长时限的任务滞留到期满
+     */
+    static void cancel(Future<?> task) {
+        if (task != null && task.cancel(false) && sCanceled.incrementAndGet() % PURGE_INTERVAL == 0) {
+            SCHEDULER.purge();
+        }
+    }
+
+    synchronized void recordLatency(long mills) {
+        this.mLatencies[this.mLatencyNext] = mills;
+        this.mLatencyNext = (this.mLatencyNext + 1) % LATENCY_SAMPLES;
+        if (this.mLatencyCount < LATENCY_SAMPLES) {
+            this.mLatencyCount++;
+        }
+    }
+
+    /**
+     * 最近成功请求延迟的 percentile 分位, 样本不足时使用 {@link Hedge#delayMills()}
+     */
+    synchronized long hedgeDelayMills() {
+        if (this.mLatencyCount < MIN_LATENCY_SAMPLES) {
+            return this.hedge.delayMills();
+        }
+        long[] sorted = Arrays.copyOf(this.mLatencies, this.mLatencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(this.hedge.percentile() / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CallPolicy");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
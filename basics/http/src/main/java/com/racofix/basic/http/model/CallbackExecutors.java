@@ -0,0 +1,88 @@
+package com.racofix.basic.http.model;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link RealCall} 和 {@link StreamCall} 回调线程的常用实现
+ */
+public final class CallbackExecutors {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * 在 OkHttp 的回调线程直接执行
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * 每个回调单独 post 到主线程
+     */
+    public static Executor main() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * 同一帧内完成的回调合并到下一个 vsync 在主线程一次性执行, 减少主线程消息和布局次数
+     */
+    public static Executor mainBatching() {
+        return new FrameBatchingExecutor();
+    }
+
+    private static final class FrameBatchingExecutor implements Executor, Choreographer.FrameCallback, Runnable {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final ConcurrentLinkedQueue<Runnable> mPending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+        @Override
+        public void execute(Runnable command) {
+            this.mPending.add(command);
+            if (this.mScheduled.compareAndSet(false, true)) {
+                //Choreographer 按 Looper 区分实例, 只能在主线程获取
+                this.mHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            this.mScheduled.set(false);
+            //只执行本帧之前到达的回调, 执行期间新到达的留给下一帧
+            for (int count = this.mPending.size(); count > 0; count--) {
+                Runnable command = this.mPending.poll();
+                if (command == null) {
+                    break;
+                }
+                command.run();
+            }
+            if (!this.mPending.isEmpty() && this.mScheduled.compareAndSet(false, true)) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+}
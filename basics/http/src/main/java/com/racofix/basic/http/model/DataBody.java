@@ -8,7 +8,7 @@ public class DataBody<T> {
     private final String mErrorUrl;
     private final long mPolicyExpireMs;
     private final long mNextRequestSleepMs;
-    private okhttp3.Response mRawResponse;
+    private transient okhttp3.Response mRawResponse;
     private boolean mIsFromCache;
 
     public DataBody(T body, int errorCode, String errorMessage, String errorUrl, long policyExpireMs,
@@ -0,0 +1,18 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 整个调用(含重试和对冲)的总时限, 超时后取消所有进行中的请求
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Deadline {
+
+    long value();
+}
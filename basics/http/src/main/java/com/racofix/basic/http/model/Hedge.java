@@ -0,0 +1,28 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 幂等请求超过该接口历史延迟的 percentile 分位仍未返回时, 再发一个相同请求, 取先成功的结果
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Hedge {
+
+    /**
+     * 包括第一次在内的最多并行请求数
+     */
+    int maxAttempts() default 2;
+
+    int percentile() default 95;
+
+    /**
+     * 延迟样本不足时使用的对冲延迟
+     */
+    long delayMills() default 500;
+}
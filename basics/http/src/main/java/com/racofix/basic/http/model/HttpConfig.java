@@ -0,0 +1,262 @@
+package com.racofix.basic.http.model;
+
+import com.racofix.basic.http.interceptor.RateLimitInterceptor;
+import com.racofix.basic.http.metrics.HttpMetrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+
+public class HttpConfig {
+
+    private final String baseUrl;
+    private final int maxIdleConnections;
+    private final long keepAliveMills;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final long connectTimeoutMills;
+    private final long readTimeoutMills;
+    private final long writeTimeoutMills;
+    private final List<Interceptor> interceptors;
+    private final ResponseCache responseCache;
+    private final boolean singleFlight;
+    private final RateLimitInterceptor rateLimiter;
+    private final Executor callbackExecutor;
+    private final HttpMetrics metrics;
+    private final OfflineQueue offlineQueue;
+    private final File httpCacheDirectory;
+    private final long httpCacheMaxBytes;
+    private final long gzipRequestMinBytes;
+
+    private HttpConfig(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMills = builder.keepAliveMills;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.connectTimeoutMills = builder.connectTimeoutMills;
+        this.readTimeoutMills = builder.readTimeoutMills;
+        this.writeTimeoutMills = builder.writeTimeoutMills;
+        this.interceptors = Collections.unmodifiableList(new ArrayList<>(builder.interceptors));
+        this.responseCache = builder.responseCache;
+        this.singleFlight = builder.singleFlight;
+        this.rateLimiter = builder.rateLimiter;
+        this.callbackExecutor = builder.callbackExecutor;
+        this.metrics = builder.metrics;
+        this.offlineQueue = builder.offlineQueue;
+        this.httpCacheDirectory = builder.httpCacheDirectory;
+        this.httpCacheMaxBytes = builder.httpCacheMaxBytes;
+        this.gzipRequestMinBytes = builder.gzipRequestMinBytes;
+    }
+
+    public String getBaseUrl() {
+        return this.baseUrl;
+    }
+
+    public int getMaxIdleConnections() {
+        return this.maxIdleConnections;
+    }
+
+    public long getKeepAliveMills() {
+        return this.keepAliveMills;
+    }
+
+    public int getMaxRequests() {
+        return this.maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return this.maxRequestsPerHost;
+    }
+
+    public long getConnectTimeoutMills() {
+        return this.connectTimeoutMills;
+    }
+
+    public long getReadTimeoutMills() {
+        return this.readTimeoutMills;
+    }
+
+    public long getWriteTimeoutMills() {
+        return this.writeTimeoutMills;
+    }
+
+    public ResponseCache getResponseCache() {
+        return this.responseCache;
+    }
+
+    public boolean isSingleFlight() {
+        return this.singleFlight;
+    }
+
+    public RateLimitInterceptor getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    public Executor getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
+    public HttpMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public OfflineQueue getOfflineQueue() {
+        return this.offlineQueue;
+    }
+
+    public File getHttpCacheDirectory() {
+        return this.httpCacheDirectory;
+    }
+
+    public long getHttpCacheMaxBytes() {
+        return this.httpCacheMaxBytes;
+    }
+
+    public long getGzipRequestMinBytes() {
+        return this.gzipRequestMinBytes;
+    }
+
+    public List<Interceptor> getInterceptors() {
+        return this.interceptors;
+    }
+
+    public static class Builder {
+        private String baseUrl = "http://v.juhe.cn/";
+        private int maxIdleConnections = 5;
+        private long keepAliveMills = TimeUnit.MINUTES.toMillis(5);
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private long connectTimeoutMills = TimeUnit.SECONDS.toMillis(10);
+        private long readTimeoutMills = TimeUnit.SECONDS.toMillis(10);
+        private long writeTimeoutMills = TimeUnit.SECONDS.toMillis(10);
+        private final List<Interceptor> interceptors = new ArrayList<>();
+        private ResponseCache responseCache;
+        private boolean singleFlight = true;
+        private RateLimitInterceptor rateLimiter;
+        private Executor callbackExecutor;
+        private HttpMetrics metrics;
+        private OfflineQueue offlineQueue;
+        private File httpCacheDirectory;
+        private long httpCacheMaxBytes;
+        private long gzipRequestMinBytes = -1;
+
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * 连接池保留的空闲连接数和保活时间
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAliveMills) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMills = keepAliveMills;
+            return this;
+        }
+
+        /**
+         * 全局并发请求数和单个 host 的并发请求数
+         */
+        public Builder maxRequests(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder connectTimeoutMills(long timeoutMills) {
+            this.connectTimeoutMills = timeoutMills;
+            return this;
+        }
+
+        public Builder readTimeoutMills(long timeoutMills) {
+            this.readTimeoutMills = timeoutMills;
+            return this;
+        }
+
+        public Builder writeTimeoutMills(long timeoutMills) {
+            this.writeTimeoutMills = timeoutMills;
+            return this;
+        }
+
+        /**
+         * 按 DataBody.policyExpireMs 缓存解码后的响应, 为null时不缓存
+         */
+        public Builder responseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * 相同的并发 GET/HEAD 请求只发起一次网络调用, 默认开启; 其它方法从不合并
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * 按接口自适应限流, 并响应服务端的 nextRequestSleepMs/Retry-After
+         */
+        public Builder rateLimiter(RateLimitInterceptor rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * RealCallback 和 StreamCallback 的执行线程, 如 {@link CallbackExecutors#mainBatching()}
+         */
+        public Builder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * 按 host 统计各阶段耗时, 为null时不注册 EventListener
+         */
+        public Builder metrics(HttpMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 断网时暂存 {@link Offline} 请求, 网络恢复后调用 {@link OfflineQueue#onNetworkAvailable()} 重放
+         */
+        public Builder offlineQueue(OfflineQueue offlineQueue) {
+            this.offlineQueue = offlineQueue;
+            return this;
+        }
+
+        /**
+         * OkHttp 的 HTTP 缓存, 保存 ETag/Last-Modified 并发送条件请求, 304 时复用缓存的响应体.
+         * 建议与 ResponseCache 的磁盘目录放在同一个父目录下
+         */
+        public Builder httpCache(File directory, long maxBytes) {
+            this.httpCacheDirectory = directory;
+            this.httpCacheMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 请求体不小于 minBytes 时 gzip 压缩, 小于0时不压缩
+         */
+        public Builder gzipRequests(long minBytes) {
+            this.gzipRequestMinBytes = minBytes;
+            return this;
+        }
+
+        public Builder addInterceptor(Interceptor interceptor) {
+            this.interceptors.add(interceptor);
+            return this;
+        }
+
+        public HttpConfig build() {
+            return new HttpConfig(this);
+        }
+    }
+}
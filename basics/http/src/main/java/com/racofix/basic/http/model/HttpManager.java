@@ -1,16 +1,170 @@
 package com.racofix.basic.http.model;
 
+import com.racofix.basic.http.interceptor.GzipRequestInterceptor;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+/**
+ * 全局共享一个 OkHttpClient, 所有 Retrofit 实例复用同一个连接池和调度线程池.
+ * 需要定制的客户端通过 {@link #clientBuilder()} 派生, 仍然共享连接池和 Dispatcher.
+ */
 public class HttpManager {
+
+    private static volatile HttpConfig sConfig = new HttpConfig.Builder().build();
+    private static volatile OkHttpClient sClient;
+    private static final ConcurrentMap<String, Retrofit> sRetrofits = new ConcurrentHashMap<>();
+    private static final GsonConverterFactory sConverterFactory = GsonConverterFactory.create();
+    private static volatile RealCallAdapterFactory sCallAdapterFactory = createCallAdapterFactory(sConfig);
+
+    private HttpManager() {
+    }
+
+    /**
+     * 替换全局配置, 之前创建的客户端和 Retrofit 实例将不再复用.
+     * 旧客户端的请求全部结束后关闭其调度线程池, 清空连接池并关闭 HTTP 缓存,
+     * 由 {@link #clientBuilder()} 派生的旧客户端也随之失效
+     */
+    public static synchronized void init(HttpConfig config) {
+        if (config == null) {
+            throw new NullPointerException("config == null");
+        }
+        OkHttpClient previous = sClient;
+        sConfig = config;
+        sCallAdapterFactory = createCallAdapterFactory(config);
+        sClient = null;
+        sRetrofits.clear();
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    public static HttpConfig config() {
+        return sConfig;
+    }
+
+    public static OkHttpClient client() {
+        OkHttpClient client = sClient;
+        if (client == null) {
+            synchronized (HttpManager.class) {
+                client = sClient;
+                if (client == null) {
+                    client = sClient = createClient(sConfig);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 派生客户端, 与全局客户端共享连接池和 Dispatcher
+     */
+    public static OkHttpClient.Builder clientBuilder() {
+        return client().newBuilder();
+    }
+
     public static Retrofit newBuilder() {
+        return newBuilder(sConfig.getBaseUrl());
+    }
+
+    /**
+     * 与 init 持有同一把锁创建并缓存, 不会把基于旧客户端的实例放进 init 之后的缓存
+     */
+    public static Retrofit newBuilder(String baseUrl) {
+        Retrofit retrofit = sRetrofits.get(baseUrl);
+        if (retrofit == null) {
+            synchronized (HttpManager.class) {
+                retrofit = sRetrofits.get(baseUrl);
+                if (retrofit == null) {
+                    retrofit = newBuilder(baseUrl, client());
+                    sRetrofits.put(baseUrl, retrofit);
+                }
+            }
+        }
+        return retrofit;
+    }
+
+    public static Retrofit newBuilder(String baseUrl, OkHttpClient client) {
         return new Retrofit.Builder()
-                .addCallAdapterFactory(RealCallAdapterFactory.create())
-                .addConverterFactory(GsonConverterFactory.create())
-                .baseUrl("http://v.juhe.cn/")
-                .client(new OkHttpClient())
+                .addCallAdapterFactory(sCallAdapterFactory)
+                .addConverterFactory(sConverterFactory)
+                .baseUrl(baseUrl)
+                .client(client)
                 .build();
     }
+
+    private static RealCallAdapterFactory createCallAdapterFactory(HttpConfig config) {
+        return new RealCallAdapterFactory.Builder()
+                .responseCache(config.getResponseCache())
+                .singleFlight(config.isSingleFlight())
+                .rateLimiter(config.getRateLimiter())
+                .callbackExecutor(config.getCallbackExecutor())
+                .offlineQueue(config.getOfflineQueue())
+                .build();
+    }
+
+    private static void release(final OkHttpClient client) {
+        final Dispatcher dispatcher = client.dispatcher();
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.setIdleCallback(null);
+                dispatcher.executorService().shutdown();
+                client.connectionPool().evictAll();
+                Cache cache = client.cache();
+                if (cache != null) {
+                    try {
+                        cache.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        };
+        dispatcher.setIdleCallback(release);
+        if (dispatcher.runningCallsCount() == 0) {
+            release.run();
+        }
+    }
+
+    private static OkHttpClient createClient(HttpConfig config) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.getMaxIdleConnections(),
+                        config.getKeepAliveMills(), TimeUnit.MILLISECONDS))
+                .connectTimeout(config.getConnectTimeoutMills(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getReadTimeoutMills(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getWriteTimeoutMills(), TimeUnit.MILLISECONDS);
+        if (config.getRateLimiter() != null) {
+            //网络拦截器只统计经过网络的请求, 缓存命中不影响延迟基线
+            builder.addNetworkInterceptor(config.getRateLimiter());
+        }
+        for (Interceptor interceptor : config.getInterceptors()) {
+            builder.addInterceptor(interceptor);
+        }
+        //响应的 gzip 由 OkHttp 自动协商和解压
+        if (config.getGzipRequestMinBytes() >= 0) {
+            builder.addInterceptor(new GzipRequestInterceptor(config.getGzipRequestMinBytes()));
+        }
+        if (config.getHttpCacheDirectory() != null) {
+            builder.cache(new Cache(config.getHttpCacheDirectory(), config.getHttpCacheMaxBytes()));
+        }
+        if (config.getMetrics() != null) {
+            builder.eventListenerFactory(config.getMetrics().eventListenerFactory());
+        }
+        return builder.build();
+    }
 }
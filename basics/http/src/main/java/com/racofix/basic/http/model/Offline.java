@@ -0,0 +1,21 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 断网或无法建立连接时把请求放入 {@link OfflineQueue}, 网络恢复后重放, 回调的 failure 信息为 {@link OfflineQueue#QUEUED}
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Offline {
+
+    /**
+     * 为 true 时相同 method + url 的请求只保留最新一条, 适合覆盖式的上报接口
+     */
+    boolean coalesce() default false;
+}
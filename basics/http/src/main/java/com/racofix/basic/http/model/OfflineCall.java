@@ -0,0 +1,139 @@
+package com.racofix.basic.http.model;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link Offline} 请求的 Call 装饰器: 已知断网时直接入队, 否则在请求确定没有发出(无法解析域名或建立连接)后入队.
+ * 读超时等请求可能已经到达服务端的异常不入队, 避免重放造成重复提交.
+ * 入队结果在写入磁盘后才返回.
+ */
+final class OfflineCall<T> implements Call<T> {
+
+    private final Call<T> mRawCall;
+    private final OfflineQueue mQueue;
+    private final boolean mCoalesce;
+    private volatile boolean mExecuted;
+
+    OfflineCall(Call<T> rawCall, OfflineQueue queue, boolean coalesce) {
+        this.mRawCall = rawCall;
+        this.mQueue = queue;
+        this.mCoalesce = coalesce;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        this.mExecuted = true;
+        if (this.mQueue.isOffline()) {
+            throw this.queue(null);
+        }
+        try {
+            return this.mRawCall.execute();
+        } catch (IOException e) {
+            if (this.mRawCall.isCanceled() || !isUnsent(e)) {
+                throw e;
+            }
+            throw this.queue(e);
+        }
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        this.mExecuted = true;
+        if (this.mQueue.isOffline()) {
+            this.queue(null, callback);
+            return;
+        }
+        this.mRawCall.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                callback.onResponse(OfflineCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                if (!call.isCanceled() && isUnsent(t)) {
+                    queue(t, callback);
+                } else {
+                    callback.onFailure(OfflineCall.this, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * 只有连接阶段的异常能确定请求没有到达服务端
+     */
+    static boolean isUnsent(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof UnknownHostException || t instanceof ConnectException
+                    || t instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 入队失败时返回写入异常, 调用方收到的仍是失败
+     */
+    private IOException queue(Throwable cause) {
+        Request request = this.mRawCall.request();
+        try {
+            this.mQueue.add(request, this.coalesceKey(request));
+            return new OfflineQueue.QueuedException(cause);
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 不阻塞调用线程; 写入磁盘后 callback 在 OfflineQueue 的日志线程("OfflineQueue")上调用,
+     * 经过 RealCall 时再切换到配置的回调 Executor
+     */
+    private void queue(final Throwable cause, final Callback<T> callback) {
+        Request request = this.mRawCall.request();
+        this.mQueue.add(request, this.coalesceKey(request), new OfflineQueue.Listener() {
+            @Override
+            public void onAdded(IOException error) {
+                callback.onFailure(OfflineCall.this, error != null ? error : new OfflineQueue.QueuedException(cause));
+            }
+        });
+    }
+
+    private String coalesceKey(Request request) {
+        return this.mCoalesce ? request.method() + " " + request.url() : null;
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return this.mExecuted || this.mRawCall.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        this.mRawCall.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return this.mRawCall.isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new OfflineCall<>(this.mRawCall.clone(), this.mQueue, this.mCoalesce);
+    }
+
+    @Override
+    public Request request() {
+        return this.mRawCall.request();
+    }
+}
@@ -0,0 +1,669 @@
+package com.racofix.basic.http.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * 离线请求队列.
+ * <p>
+ * 标注了 {@link Offline} 的请求在断网或无法建立连接时写入追加式日志文件, 网络恢复后按批次重放.
+ * 日志只追加 ADD/DONE 两种记录, 每批重放完成只写一条 DONE 记录; 失效记录过多时在后台重写.
+ * 同一个合并 key 的请求只保留最新一条. 文件读写都在单独的线程中执行,
+ * 入队结果在 ADD 记录同步到磁盘之后才通知调用方.
+ */
+public class OfflineQueue {
+
+    public static final String QUEUED = "Queued for offline replay";
+
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DONE = 2;
+    private static final int MIN_COMPACT_RECORDS = 256;
+
+    private final File journalFile;
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final OkHttpClient client;
+    private final ExecutorService journalExecutor;
+    private final ExecutorService replayExecutor;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Long> keys = new HashMap<>();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    /**
+     * 等待写入的请求, 日志线程一次取出全部, 写入后只同步一次磁盘
+     */
+    private List<PendingAdd> pendingAdds = new ArrayList<>();
+    private volatile boolean offline;
+    private DataOutputStream journal;
+    private FileOutputStream journalStream;
+    private long nextId;
+    private int deadRecords;
+
+    private OfflineQueue(Builder builder) {
+        this.journalFile = builder.journalFile;
+        this.batchSize = builder.batchSize;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.client = builder.client;
+        this.journalExecutor = newExecutor("OfflineQueue");
+        this.replayExecutor = newExecutor("OfflineQueue-replay");
+        this.journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * QueuedException 表示请求未发出, 已进入离线队列
+     */
+    public static final class QueuedException extends IOException {
+        QueuedException(Throwable cause) {
+            super(QUEUED, cause);
+        }
+    }
+
+    /**
+     * 入队结果, 在名为 "OfflineQueue" 的日志线程回调; error 为null表示已写入磁盘
+     */
+    interface Listener {
+        void onAdded(IOException error);
+    }
+
+    private static final class PendingAdd {
+        final String key;
+        final String method;
+        final String url;
+        final String[] headers;
+        final String contentType;
+        final byte[] body;
+        final Listener listener;
+
+        PendingAdd(String key, String method, String url, String[] headers, String contentType, byte[] body,
+                   Listener listener) {
+            this.key = key;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.body = body;
+            this.listener = listener;
+        }
+    }
+
+    private static final class Entry {
+        final long id;
+        final String key;
+        final String method;
+        final String url;
+        final String[] headers;
+        final String contentType;
+        final byte[] body;
+
+        Entry(long id, String key, String method, String url, String[] headers, String contentType, byte[] body) {
+            this.id = id;
+            this.key = key;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        Request toRequest() {
+            RequestBody requestBody = null;
+            if (permitsRequestBody(this.method)) {
+                MediaType mediaType = this.contentType.isEmpty() ? null : MediaType.parse(this.contentType);
+                requestBody = RequestBody.create(mediaType, this.body);
+            }
+            return new Request.Builder()
+                    .url(this.url)
+                    .headers(Headers.of(this.headers))
+                    .method(this.method, requestBody)
+                    .build();
+        }
+    }
+
+    public boolean isOffline() {
+        return this.offline;
+    }
+
+    public void onNetworkLost() {
+        this.offline = true;
+    }
+
+    /**
+     * 网络恢复时调用, 开始重放队列
+     */
+    public void onNetworkAvailable() {
+        this.offline = false;
+        this.replay();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 把请求写入队列, coalesceKey 不为空时替换相同 key 的旧请求. 在调用线程等待写入磁盘
+     */
+    void add(Request request, String coalesceKey) throws IOException {
+        final IOException[] result = new IOException[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.add(request, coalesceKey, new Listener() {
+            @Override
+            public void onAdded(IOException error) {
+                result[0] = error;
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        if (result[0] != null) {
+            throw result[0];
+        }
+    }
+
+    /**
+     * 异步写入队列, 写入磁盘或失败后在日志线程通知 listener.
+     * 同一时间提交的多个请求合并成一次写入和一次 fsync(group commit)
+     */
+    void add(Request request, String coalesceKey, final Listener listener) {
+        byte[] body = new byte[0];
+        String contentType = "";
+        if (request.body() != null) {
+            try {
+                Buffer buffer = new Buffer();
+                request.body().writeTo(buffer);
+                body = buffer.readByteArray();
+            } catch (IOException e) {
+                listener.onAdded(e);
+                return;
+            }
+            MediaType mediaType = request.body().contentType();
+            contentType = mediaType != null ? mediaType.toString() : "";
+        }
+        Headers headers = request.headers();
+        final String[] namesAndValues = new String[headers.size() * 2];
+        for (int i = 0; i < headers.size(); i++) {
+            namesAndValues[i * 2] = headers.name(i);
+            namesAndValues[i * 2 + 1] = headers.value(i);
+        }
+
+        PendingAdd pending = new PendingAdd(coalesceKey == null ? "" : coalesceKey, request.method(),
+                request.url().toString(), namesAndValues, contentType, body, listener);
+        boolean schedule;
+        synchronized (this) {
+            this.pendingAdds.add(pending);
+            schedule = this.pendingAdds.size() == 1;
+        }
+        if (schedule) {
+            this.journalExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drainAdds();
+                }
+            });
+        }
+    }
+
+    /**
+     * 在日志线程写入所有等待中的请求; id 在这里分配, 保证在历史记录加载之后
+     */
+    private void drainAdds() {
+        List<PendingAdd> batch;
+        List<Entry> added = new ArrayList<>();
+        synchronized (this) {
+            batch = this.pendingAdds;
+            this.pendingAdds = new ArrayList<>();
+            for (PendingAdd pending : batch) {
+                added.add(new Entry(this.nextId++, pending.key, pending.method, pending.url, pending.headers,
+                        pending.contentType, pending.body));
+            }
+        }
+        IOException error = null;
+        try {
+            this.append(added);
+        } catch (IOException e) {
+            error = e;
+        }
+        if (error == null) {
+            synchronized (this) {
+                for (Entry entry : added) {
+                    this.put(entry);
+                }
+            }
+        }
+        for (PendingAdd pending : batch) {
+            pending.listener.onAdded(error);
+        }
+    }
+
+    static boolean permitsRequestBody(String method) {
+        return !("GET".equals(method) || "HEAD".equals(method));
+    }
+
+    /**
+     * 按批次重放, 每批最多 maxConcurrency 个并发请求; 出现网络异常或 5xx 时停止, 剩余请求留在队列中
+     */
+    public void replay() {
+        if (!this.replaying.compareAndSet(false, true)) {
+            return;
+        }
+        this.replayExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    awaitJournal();
+                    boolean more = true;
+                    while (more && !offline) {
+                        more = replayBatch();
+                    }
+                } finally {
+                    replaying.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * 等待日志线程中已提交的加载和写入完成
+     */
+    private void awaitJournal() {
+        try {
+            this.journalExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    private boolean replayBatch() {
+        List<Entry> batch = new ArrayList<>(this.batchSize);
+        synchronized (this) {
+            Iterator<Entry> iterator = this.entries.values().iterator();
+            while (iterator.hasNext() && batch.size() < this.batchSize) {
+                batch.add(iterator.next());
+            }
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        OkHttpClient client = this.client != null ? this.client : HttpManager.client();
+        final List<Long> done = Collections.synchronizedList(new ArrayList<Long>(batch.size()));
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Semaphore permits = new Semaphore(this.maxConcurrency);
+        final CountDownLatch latch = new CountDownLatch(batch.size());
+        try {
+            for (final Entry entry : batch) {
+                permits.acquire();
+                if (failed.get()) {
+                    permits.release();
+                    latch.countDown();
+                    continue;
+                }
+                client.newCall(entry.toRequest()).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        failed.set(true);
+                        permits.release();
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        int code = response.code();
+                        response.close();
+                        //4xx 重放也不会成功, 直接丢弃
+                        if (code >= 500 || code == 408 || code == 429) {
+                            failed.set(true);
+                        } else {
+                            done.add(entry.id);
+                        }
+                        permits.release();
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+        }
+
+        this.markDone(done);
+        return !failed.get();
+    }
+
+    private void markDone(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Long id : ids) {
+                Entry entry = this.entries.remove(id);
+                if (entry != null && !entry.key.isEmpty() && id.equals(this.keys.get(entry.key))) {
+                    this.keys.remove(entry.key);
+                }
+            }
+        }
+        this.journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendDone(ids);
+            }
+        });
+    }
+
+    /**
+     * 加入内存索引, 被合并的旧请求计为失效记录
+     */
+    private void put(Entry entry) {
+        if (!entry.key.isEmpty()) {
+            Long previous = this.keys.put(entry.key, entry.id);
+            if (previous != null && this.entries.remove(previous) != null) {
+                this.deadRecords++;
+            }
+        }
+        this.entries.put(entry.id, entry);
+    }
+
+    private void load() {
+        boolean torn = false;
+        if (this.journalFile.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.journalFile)));
+                while (true) {
+                    byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (type == RECORD_ADD) {
+                        Entry entry = readEntry(in);
+                        synchronized (this) {
+                            this.nextId = Math.max(this.nextId, entry.id + 1);
+                            this.put(entry);
+                        }
+                    } else if (type == RECORD_DONE) {
+                        int count = in.readInt();
+                        synchronized (this) {
+                            for (int i = 0; i < count; i++) {
+                                Entry entry = this.entries.remove(in.readLong());
+                                if (entry != null && !entry.key.isEmpty()) {
+                                    this.keys.remove(entry.key);
+                                }
+                            }
+                            this.deadRecords += count + 1;
+                        }
+                    } else {
+                        torn = true;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                //最后一条记录没有写完整
+                torn = true;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+
+        if (torn || this.shouldCompact()) {
+            this.compact();
+        }
+    }
+
+    /**
+     * 写入一批记录后只同步一次磁盘. 失败时截掉这一批写入的内容并关闭日志, 下次写入重新打开
+     */
+    private void append(List<Entry> entries) throws IOException {
+        long length = -1;
+        try {
+            DataOutputStream out = this.journal();
+            length = this.journalStream.getChannel().size();
+            for (Entry entry : entries) {
+                out.writeByte(RECORD_ADD);
+                writeEntry(out, entry);
+            }
+            out.flush();
+            this.journalStream.getFD().sync();
+        } catch (IOException e) {
+            this.closeJournal();
+            if (length >= 0) {
+                truncate(this.journalFile, length);
+            }
+            throw e;
+        }
+    }
+
+    private static void truncate(File file, long length) {
+        RandomAccessFile access = null;
+        try {
+            access = new RandomAccessFile(file, "rw");
+            access.setLength(length);
+        } catch (IOException ignored) {
+            //加载时按残缺记录处理
+        } finally {
+            closeQuietly(access);
+        }
+    }
+
+    private void appendDone(List<Long> ids) {
+        try {
+            DataOutputStream out = this.journal();
+            out.writeByte(RECORD_DONE);
+            out.writeInt(ids.size());
+            for (Long id : ids) {
+                out.writeLong(id);
+            }
+            out.flush();
+        } catch (IOException e) {
+            this.closeJournal();
+        }
+        synchronized (this) {
+            this.deadRecords += ids.size() + 1;
+        }
+        if (this.shouldCompact()) {
+            this.compact();
+        }
+    }
+
+    private synchronized boolean shouldCompact() {
+        return this.deadRecords >= MIN_COMPACT_RECORDS && this.deadRecords > this.entries.size() * 2;
+    }
+
+    /**
+     * 只保留有效的 ADD 记录重写日志
+     */
+    private void compact() {
+        List<Entry> live;
+        synchronized (this) {
+            live = new ArrayList<>(this.entries.values());
+            this.deadRecords = 0;
+        }
+        this.closeJournal();
+        File temp = new File(this.journalFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            for (Entry entry : live) {
+                out.writeByte(RECORD_ADD);
+                writeEntry(out, entry);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(this.journalFile)) {
+                this.journalFile.delete();
+                temp.renameTo(this.journalFile);
+            }
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private DataOutputStream journal() throws IOException {
+        if (this.journal == null) {
+            File parent = this.journalFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            this.journalStream = new FileOutputStream(this.journalFile, true);
+            this.journal = new DataOutputStream(new BufferedOutputStream(this.journalStream));
+        }
+        return this.journal;
+    }
+
+    private void closeJournal() {
+        closeQuietly(this.journal);
+        this.journal = null;
+        this.journalStream = null;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.body.length);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(entry.id);
+        record.writeUTF(entry.key);
+        record.writeUTF(entry.method);
+        record.writeUTF(entry.url);
+        record.writeInt(entry.headers.length);
+        for (String value : entry.headers) {
+            record.writeUTF(value);
+        }
+        record.writeUTF(entry.contentType);
+        record.writeInt(entry.body.length);
+        record.write(entry.body);
+        //先写长度, 读取时整条读入, 避免半条记录被当作有效数据
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        long id = record.readLong();
+        String key = record.readUTF();
+        String method = record.readUTF();
+        String url = record.readUTF();
+        String[] headers = new String[record.readInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = record.readUTF();
+        }
+        String contentType = record.readUTF();
+        byte[] body = new byte[record.readInt()];
+        record.readFully(body);
+        return new Entry(id, key, method, url, headers, contentType, body);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor(final String name) {
+        return new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static class Builder {
+        private File journalFile;
+        private int batchSize = 50;
+        private int maxConcurrency = 4;
+        private OkHttpClient client;
+
+        public Builder(File journalFile) {
+            this.journalFile = journalFile;
+        }
+
+        /**
+         * 每批重放的请求数, 每批完成后写一条 DONE 记录
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = Math.max(1, batchSize);
+            return this;
+        }
+
+        /**
+         * 重放时的最大并发数, 为1时严格按入队顺序重放
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            return this;
+        }
+
+        /**
+         * 重放使用的 OkHttpClient, 默认 {@link HttpManager#client()}
+         */
+        public Builder client(OkHttpClient client) {
+            this.client = client;
+            return this;
+        }
+
+        public OfflineQueue build() {
+            return new OfflineQueue(this);
+        }
+    }
+}
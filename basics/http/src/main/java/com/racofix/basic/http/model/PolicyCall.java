@@ -0,0 +1,285 @@
+package com.racofix.basic.http.model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * 按 {@link CallPolicy} 执行重试、对冲和总时限的 Call 装饰器.
+ * <p>
+ * 每次尝试都是原始 Call 的 clone; 任一尝试成功即取消其余尝试. 对冲请求进行中时, 单个尝试失败不会触发重试.
+ * 可重试的错误响应(408/5xx)会被保留, 其余尝试都以异常结束时返回该响应而不是异常.
+ * OkHttp 3.10 没有整体调用超时, 总时限通过到期取消所有尝试实现.
+ */
+final class PolicyCall<T> implements Call<T> {
+
+    private final Call<T> mRawCall;
+    private final CallPolicy mPolicy;
+    private final boolean mIdempotent;
+    private final List<Call<T>> mAttempts = new ArrayList<>();
+    private Callback<T> mCallback;
+    private boolean mExecuted;
+    private boolean mCanceled;
+    private boolean mDone;
+    private boolean mDeadlineExceeded;
+    private int mPending;
+    private int mRetries;
+    private int mHedges;
+    private Future<?> mDeadlineTask;
+    private Future<?> mHedgeTask;
+    /**
+     * 最近一次可重试的错误响应
+     */
+    private Response<T> mFallback;
+
+    PolicyCall(Call<T> rawCall, CallPolicy policy) {
+        this.mRawCall = rawCall;
+        this.mPolicy = policy;
+        this.mIdempotent = CallPolicy.isIdempotent(rawCall.request().method());
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+        this.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                result[0] = response;
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                result[0] = t;
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            this.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        if (result[0] instanceof IOException) {
+            throw (IOException) result[0];
+        } else if (result[0] instanceof RuntimeException) {
+            throw (RuntimeException) result[0];
+        } else if (result[0] instanceof Throwable) {
+            throw new IOException((Throwable) result[0]);
+        }
+        return (Response<T>) result[0];
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        synchronized (this) {
+            if (this.mExecuted) {
+                throw new IllegalStateException("Already executed.");
+            }
+            this.mExecuted = true;
+            this.mCallback = callback;
+            if (this.mCanceled) {
+                this.mDone = true;
+            } else if (this.mPolicy.deadlineMills > 0) {
+                this.mDeadlineTask = CallPolicy.SCHEDULER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeadline();
+                    }
+                }, this.mPolicy.deadlineMills, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (this.isCanceled()) {
+            callback.onFailure(this, new IOException("Canceled"));
+            return;
+        }
+        this.startAttempt();
+    }
+
+    private void startAttempt() {
+        final Call<T> call;
+        synchronized (this) {
+            if (this.mDone || this.mCanceled) {
+                return;
+            }
+            call = this.mAttempts.isEmpty() ? this.mRawCall : this.mRawCall.clone();
+            this.mAttempts.add(call);
+            this.mPending++;
+            this.scheduleHedge();
+        }
+
+        final long start = System.nanoTime();
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> c, Response<T> response) {
+                onAttemptResponse(start, response);
+            }
+
+            @Override
+            public void onFailure(Call<T> c, Throwable t) {
+                onAttemptFailure(t);
+            }
+        });
+    }
+
+    private void scheduleHedge() {
+        if (this.mPolicy.hedge == null || !this.mIdempotent
+                || this.mHedges >= this.mPolicy.hedge.maxAttempts() - 1) {
+            return;
+        }
+        CallPolicy.cancel(this.mHedgeTask);
+        this.mHedgeTask = CallPolicy.SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PolicyCall.this) {
+                    if (mDone || mPending == 0) {
+                        return;
+                    }
+                    mHedges++;
+                }
+                startAttempt();
+            }
+        }, this.mPolicy.hedgeDelayMills(), TimeUnit.MILLISECONDS);
+    }
+
+    private void onAttemptResponse(long start, Response<T> response) {
+        synchronized (this) {
+            if (this.mDone) {
+                return;
+            }
+            this.mPending--;
+            if (response.isSuccessful()) {
+                this.mPolicy.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else if (CallPolicy.isRetryable(response.code())) {
+                this.mFallback = response;
+                if (this.retryOrWait()) {
+                    return;
+                }
+            }
+        }
+        this.finish(response, null);
+    }
+
+    private void onAttemptFailure(Throwable t) {
+        Response<T> fallback;
+        synchronized (this) {
+            if (this.mDone) {
+                return;
+            }
+            this.mPending--;
+            if (this.mDeadlineExceeded) {
+                t = new InterruptedIOException("deadline exceeded");
+            } else if (!this.mCanceled && this.retryOrWait()) {
+                return;
+            }
+            fallback = this.mCanceled || this.mDeadlineExceeded ? null : this.mFallback;
+        }
+        this.finish(fallback, fallback == null ? t : null);
+    }
+
+    /**
+     * 还有对冲请求进行中时继续等待, 否则按退避安排下一次重试; 两者都不满足返回 false
+     */
+    private boolean retryOrWait() {
+        if (this.mPending > 0) {
+            return true;
+        }
+        Retry retry = this.mPolicy.retry;
+        if (retry == null || !this.mIdempotent || this.mRetries >= retry.maxAttempts() - 1) {
+            return false;
+        }
+        this.mRetries++;
+        CallPolicy.SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                startAttempt();
+            }
+        }, this.mPolicy.backoffMills(this.mRetries - 1), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void onDeadline() {
+        synchronized (this) {
+            if (this.mDone) {
+                return;
+            }
+            this.mDeadlineExceeded = true;
+            if (this.mPending > 0) {
+                this.cancelAttempts();
+                return;
+            }
+        }
+        this.finish(null, new InterruptedIOException("deadline exceeded"));
+    }
+
+    private void finish(Response<T> response, Throwable t) {
+        Callback<T> callback;
+        synchronized (this) {
+            if (this.mDone) {
+                return;
+            }
+            this.mDone = true;
+            callback = this.mCallback;
+            CallPolicy.cancel(this.mDeadlineTask);
+            CallPolicy.cancel(this.mHedgeTask);
+            this.mFallback = null;
+            this.cancelAttempts();
+        }
+        if (response != null) {
+            callback.onResponse(this, response);
+        } else {
+            callback.onFailure(this, t);
+        }
+    }
+
+    private void cancelAttempts() {
+        for (Call<T> attempt : this.mAttempts) {
+            attempt.cancel();
+        }
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return this.mExecuted;
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            this.mCanceled = true;
+            if (this.mDone || this.mPending > 0 || !this.mExecuted) {
+                this.cancelAttempts();
+                return;
+            }
+        }
+        //正在等待重试
+        this.finish(null, new IOException("Canceled"));
+    }
+
+    @Override
+    public synchronized boolean isCanceled() {
+        return this.mCanceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new PolicyCall<>(this.mRawCall.clone(), this.mPolicy);
+    }
+
+    @Override
+    public Request request() {
+        return this.mRawCall.request();
+    }
+}
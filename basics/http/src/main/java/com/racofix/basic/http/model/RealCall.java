@@ -1,9 +1,13 @@
 package com.racofix.basic.http.model;
 
 import com.racofix.basic.http.RealCallback;
+import com.racofix.basic.http.interceptor.RateLimitInterceptor;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
 
+import okhttp3.HttpUrl;
 import okhttp3.Request;
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -11,58 +15,295 @@ import retrofit2.Response;
 
 /**
  * 装饰器模式调用Call
+ * <p>
+ * 配置了 {@link ResponseCache} 时, GET 请求返回的 {@link DataBody} 会按 policyExpireMs 缓存,
+ * 有效期内直接返回缓存; 过期但仍在 staleWhileRevalidate 窗口内时先返回缓存, 再请求网络并回调新数据, 请求失败时不回调 failure.
+ * 每次命中都从缓存的 JSON 重新解码, 调用方可以修改拿到的对象.
+ * 开启 single-flight 时, 相同的并发 GET/HEAD 请求共享一次网络调用.
+ * 配置了 {@link RateLimitInterceptor} 时, enqueue 在交给 OkHttp Dispatcher 之前排队等待限流许可,
+ * 不占用 Dispatcher 的并发名额; DataBody.nextRequestSleepMs 会反馈给限流器.
+ * 配置了回调 Executor 时, enqueue 的所有回调都在该 Executor 上执行, 见 {@link CallbackExecutors}.
  *
  * @param <T> 数据类型
  */
 public class RealCall<T> {
 
     private final Call<T> mRawCall;
+    private final Type mResponseType;
+    private final ResponseCache mCache;
+    private final SingleFlight mSingleFlight;
+    private final RateLimitInterceptor mRateLimiter;
+    private final Executor mCallbackExecutor;
+    private volatile SingleFlight.Flight<T> mFlight;
+    private volatile SingleFlight.Waiter<T> mWaiter;
 
     public RealCall(Call<T> rawCall) {
+        this(rawCall, null, null, null, null, null);
+    }
+
+    RealCall(Call<T> rawCall, Type responseType, ResponseCache cache, SingleFlight singleFlight,
+             RateLimitInterceptor rateLimiter, Executor callbackExecutor) {
         this.mRawCall = rawCall;
+        this.mResponseType = responseType;
+        this.mCache = cache;
+        this.mSingleFlight = singleFlight;
+        this.mRateLimiter = rateLimiter;
+        this.mCallbackExecutor = callbackExecutor;
     }
 
     public Response<T> execute() throws IOException {
-        Response<T> response = this.mRawCall.execute();
+        String cacheKey = this.cacheKey();
+        if (cacheKey != null) {
+            ResponseCache.Entry entry = this.mCache.get(cacheKey);
+            if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+                return Response.success((T) this.mCache.decode(entry, this.mResponseType));
+            }
+        }
+
+        SingleFlight.Flight<T> flight = this.joinFlight(null);
+        if (flight != null && flight.call != this.mRawCall) {
+            return flight.await(this.mWaiter);
+        }
+
+        Response<T> response;
+        HttpUrl url = this.mRawCall.request().url();
+        try {
+            if (this.mRateLimiter != null) {
+                this.mRateLimiter.acquire(url);
+            }
+            try {
+                response = this.mRawCall.execute();
+            } finally {
+                if (this.mRateLimiter != null) {
+                    this.mRateLimiter.release(url);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (flight != null) {
+                flight.complete(null, e);
+            }
+            throw e;
+        }
         T body = response.body();
         if (body instanceof DataBody) {
             ((DataBody<T>) body).setRawResponse(response.raw());
         }
+        this.hint(response);
+        this.store(cacheKey, response);
+        if (flight != null) {
+            flight.complete(response, null);
+        }
         return response;
     }
 
-    public void enqueue(final RealCallback<T> callback) {
-        this.mRawCall.enqueue(new Callback<T>() {
+    public void enqueue(RealCallback<T> realCallback) {
+        final RealCallback<T> callback = this.dispatch(realCallback);
+        final String cacheKey = this.cacheKey();
+        if (cacheKey == null) {
+            this.enqueueNetwork(null, callback);
+            return;
+        }
+
+        ResponseCache.Entry entry = this.mCache.getFromMemory(cacheKey);
+        if (entry != null || !this.mCache.hasDiskTier()) {
+            this.enqueueCached(cacheKey, entry, callback);
+            return;
+        }
+
+        this.mCache.diskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                enqueueCached(cacheKey, mCache.get(cacheKey), callback);
+            }
+        });
+    }
+
+    private void enqueueCached(String cacheKey, ResponseCache.Entry entry, RealCallback<T> callback) {
+        if (entry != null) {
+            long now = System.currentTimeMillis();
+            boolean fresh = entry.isFresh(now);
+            if (fresh || now - entry.storedAt < entry.expireMs + this.mCache.staleWhileRevalidateMills()) {
+                callback.successful((T) this.mCache.decode(entry, this.mResponseType));
+                if (fresh) {
+                    return;
+                }
+                callback = revalidate(callback);
+            }
+        }
+        this.enqueueNetwork(cacheKey, callback);
+    }
+
+    /**
+     * 已经返回了旧数据, 后台重新请求失败时不再回调 failure
+     */
+    private static <T> RealCallback<T> revalidate(final RealCallback<T> callback) {
+        return new RealCallback<T>() {
+            @Override
+            public void successful(T t) {
+                callback.successful(t);
+            }
+
+            @Override
+            public void failure(String message) {
+            }
+        };
+    }
+
+    private void enqueueNetwork(final String cacheKey, final RealCallback<T> callback) {
+        final SingleFlight.Flight<T> flight = this.joinFlight(callback);
+        if (flight != null && flight.call != this.mRawCall) {
+            return;
+        }
+
+        if (this.mRateLimiter == null) {
+            this.mRawCall.enqueue(this.networkCallback(cacheKey, callback, flight, null));
+            return;
+        }
+        final HttpUrl url = this.mRawCall.request().url();
+        this.mRateLimiter.acquire(url, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mRawCall.enqueue(networkCallback(cacheKey, callback, flight, url));
+                } catch (RuntimeException e) {
+                    mRateLimiter.release(url);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * limitedUrl 不为null时请求结束后归还限流许可
+     */
+    private Callback<T> networkCallback(final String cacheKey, final RealCallback<T> callback,
+                                        final SingleFlight.Flight<T> flight, final HttpUrl limitedUrl) {
+        return new Callback<T>() {
             @Override
             public void onResponse(Call<T> call, Response<T> response) {
                 T body = response.body();
                 if (body instanceof DataBody) {
-                    DataBody<T> body1 = (DataBody<T>) body;
+                    ((DataBody<T>) body).setRawResponse(response.raw());
+                }
+                hint(response);
+                if (limitedUrl != null) {
+                    mRateLimiter.release(limitedUrl);
+                }
+                store(cacheKey, response);
+                if (flight != null) {
+                    flight.complete(response, null);
+                } else {
+                    callback.successful(body);
                 }
-                callback.successful(body);
             }
 
             @Override
             public void onFailure(Call<T> call, Throwable t) {
-                callback.failure(t.getMessage());
+                if (limitedUrl != null) {
+                    mRateLimiter.release(limitedUrl);
+                }
+                if (flight != null) {
+                    flight.complete(null, t);
+                } else {
+                    callback.failure(t.getMessage());
+                }
             }
-        });
+        };
+    }
+
+    /**
+     * 加入相同请求的 single-flight, 未开启或不是 GET/HEAD 请求时返回 null
+     */
+    private SingleFlight.Flight<T> joinFlight(RealCallback<T> callback) {
+        if (this.mSingleFlight == null) {
+            return null;
+        }
+        String key = SingleFlight.key(this.mRawCall.request());
+        if (key == null) {
+            return null;
+        }
+        SingleFlight.Waiter<T> waiter = new SingleFlight.Waiter<>(callback);
+        this.mWaiter = waiter;
+        return this.mFlight = this.mSingleFlight.join(key, this.mRawCall, waiter);
+    }
+
+    /**
+     * 把回调切换到 mCallbackExecutor, 未配置时在调用线程执行
+     */
+    private RealCallback<T> dispatch(final RealCallback<T> callback) {
+        if (this.mCallbackExecutor == null) {
+            return callback;
+        }
+        return new RealCallback<T>() {
+            @Override
+            public void successful(final T t) {
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.successful(t);
+                    }
+                });
+            }
+
+            @Override
+            public void failure(final String message) {
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.failure(message);
+                    }
+                });
+            }
+        };
+    }
+
+    private void hint(Response<T> response) {
+        T body = response.body();
+        if (this.mRateLimiter != null && body instanceof DataBody) {
+            this.mRateLimiter.hint(response.raw().request().url(), ((DataBody) body).nextRequestSleepMs());
+        }
+    }
+
+    private void store(String cacheKey, Response<T> response) {
+        T body = response.body();
+        if (cacheKey != null && response.isSuccessful() && body instanceof DataBody
+                && ((DataBody) body).policyExpireMs() > 0) {
+            this.mCache.put(cacheKey, body, this.mResponseType, ((DataBody) body).policyExpireMs());
+        }
+    }
+
+    private String cacheKey() {
+        if (this.mCache == null || this.mResponseType == null) {
+            return null;
+        }
+        Request request = this.mRawCall.request();
+        return "GET".equals(request.method()) ? request.method() + " " + request.url() : null;
     }
 
     public boolean isExecuted() {
         return this.mRawCall.isExecuted();
     }
 
+    /**
+     * 合并请求中取消只会移除当前等待者, 所有等待者都取消后才取消共享的网络调用
+     */
     public void cancel() {
-        this.mRawCall.cancel();
+        SingleFlight.Flight<T> flight = this.mFlight;
+        if (flight != null) {
+            flight.leave(this.mWaiter);
+        } else {
+            this.mRawCall.cancel();
+        }
     }
 
     public boolean isCanceled() {
-        return this.mRawCall.isCanceled();
+        SingleFlight.Waiter<T> waiter = this.mWaiter;
+        return waiter != null ? waiter.canceled : this.mRawCall.isCanceled();
     }
 
     public RealCall<T> clone() {
-        return new RealCall<>(mRawCall.clone());
+        return new RealCall<>(mRawCall.clone(), mResponseType, mCache, mSingleFlight, mRateLimiter,
+                mCallbackExecutor);
     }
 
     public Request request() {
@@ -1,21 +1,50 @@
 package com.racofix.basic.http.model;
 
+import com.google.gson.Gson;
+import com.racofix.basic.http.interceptor.RateLimitInterceptor;
+
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.CallAdapter;
 import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
 
 public class RealCallAdapterFactory extends CallAdapter.Factory {
 
+    private final ResponseCache mCache;
+    private final SingleFlight mSingleFlight;
+    private final RateLimitInterceptor mRateLimiter;
+    private final Gson mGson;
+    private final Executor mCallbackExecutor;
+    private final OfflineQueue mOfflineQueue;
+
+    private RealCallAdapterFactory(Builder builder) {
+        this.mCache = builder.responseCache;
+        this.mSingleFlight = builder.singleFlight ? new SingleFlight() : null;
+        this.mRateLimiter = builder.rateLimiter;
+        this.mGson = builder.gson != null ? builder.gson : new Gson();
+        this.mCallbackExecutor = builder.callbackExecutor;
+        this.mOfflineQueue = builder.offlineQueue;
+    }
+
     public static RealCallAdapterFactory create() {
-        return new RealCallAdapterFactory();
+        return new Builder().build();
+    }
+
+    public static RealCallAdapterFactory create(ResponseCache cache) {
+        return new Builder().responseCache(cache).build();
     }
 
     @Override
     public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(returnType) == StreamCall.class) {
+            return this.streamCallAdapter(returnType, annotations);
+        }
 
         //返回值必须是RealCall并且带有泛型（参数类型），根据APIService接口中的方法返回值，确定returnType
         //如 RealCall<String> getCategories();，那确定returnType就是RealCall<String>
@@ -23,6 +52,9 @@ public class RealCallAdapterFactory extends CallAdapter.Factory {
             return null;
         }
         final Type callReturnType = getParameterUpperBound(0, (ParameterizedType) returnType);
+        //@Retry/@Hedge/@Deadline 按方法解析一次, 对冲延迟的统计也按方法区分
+        final CallPolicy policy = CallPolicy.from(annotations);
+        final Offline offline = this.mOfflineQueue != null ? findOffline(annotations) : null;
         return new CallAdapter<Object, RealCall<Object>>() {
             @Override
             public Type responseType() {
@@ -31,8 +63,116 @@ public class RealCallAdapterFactory extends CallAdapter.Factory {
 
             @Override
             public RealCall<Object> adapt(Call<Object> rawCall) {
-                return new RealCall<>(rawCall);
+                Call<Object> call = policy == null ? rawCall : new PolicyCall<>(rawCall, policy);
+                if (offline != null) {
+                    call = new OfflineCall<>(call, mOfflineQueue, offline.coalesce());
+                }
+                return new RealCall<>(call, callReturnType, mCache, mSingleFlight, mRateLimiter, mCallbackExecutor);
             }
         };
     }
+
+    private static Offline findOffline(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Offline) {
+                return (Offline) annotation;
+            }
+        }
+        return null;
+    }
+
+    private CallAdapter<?, ?> streamCallAdapter(Type returnType, Annotation[] annotations) {
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("StreamCall return type must be parameterized as StreamCall<Foo>");
+        }
+        String path = "";
+        int pageSize = 20;
+        boolean streaming = false;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                streaming = true;
+            } else if (annotation instanceof StreamList) {
+                path = ((StreamList) annotation).path();
+                pageSize = ((StreamList) annotation).pageSize();
+            }
+        }
+        //没有 @Streaming 时 Retrofit 会先把整个响应体读入内存
+        if (!streaming) {
+            throw new IllegalArgumentException("StreamCall methods must be annotated with @Streaming");
+        }
+
+        final Type elementType = getParameterUpperBound(0, (ParameterizedType) returnType);
+        final String listPath = path;
+        final int listPageSize = pageSize;
+        return new CallAdapter<ResponseBody, StreamCall<Object>>() {
+            @Override
+            public Type responseType() {
+                return ResponseBody.class;
+            }
+
+            @Override
+            public StreamCall<Object> adapt(Call<ResponseBody> rawCall) {
+                return new StreamCall<>(rawCall, mGson, elementType, listPath, listPageSize, mCallbackExecutor);
+            }
+        };
+    }
+
+    public static class Builder {
+        private ResponseCache responseCache;
+        private boolean singleFlight;
+        private RateLimitInterceptor rateLimiter;
+        private Gson gson;
+        private Executor callbackExecutor;
+        private OfflineQueue offlineQueue;
+
+        public Builder responseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * 合并 method + url + headers 相同的并发 GET/HEAD 请求
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * RealCall 在交给 Dispatcher 之前向限流器排队, 并把 DataBody.nextRequestSleepMs 反馈给限流器;
+         * 限流器本身需要加入 OkHttpClient 以统计延迟
+         */
+        public Builder rateLimiter(RateLimitInterceptor rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * StreamCall 解码列表元素使用的 Gson
+         */
+        public Builder gson(Gson gson) {
+            this.gson = gson;
+            return this;
+        }
+
+        /**
+         * RealCallback 和 StreamCallback 的执行线程, 为null时在 OkHttp 线程回调, 见 {@link CallbackExecutors}
+         */
+        public Builder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * 标注了 {@link Offline} 的请求在断网或无法建立连接时写入该队列
+         */
+        public Builder offlineQueue(OfflineQueue offlineQueue) {
+            this.offlineQueue = offlineQueue;
+            return this;
+        }
+
+        public RealCallAdapterFactory build() {
+            return new RealCallAdapterFactory(this);
+        }
+    }
 }
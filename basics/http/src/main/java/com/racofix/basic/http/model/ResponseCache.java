@@ -0,0 +1,309 @@
+package com.racofix.basic.http.model;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+/**
+ * 解码后响应的两级缓存: 内存 LRU(按 JSON 长度计重) + 磁盘.
+ * <p>
+ * 响应在返回给调用方之前于调用线程序列化成 JSON, 缓存只保存 JSON, 每次命中都重新解码出新的对象,
+ * 调用方修改拿到的对象不会影响缓存和其他调用方; 命中时 {@link DataBody#isFromCache()} 为 true.
+ * 磁盘读写都在单独的线程中执行.
+ */
+public class ResponseCache {
+
+    private final Gson gson;
+    private final long maxMemoryChars;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final long staleWhileRevalidateMills;
+    private final ExecutorService diskExecutor;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryChars;
+
+    private ResponseCache(Builder builder) {
+        this.gson = builder.gson != null ? builder.gson : new Gson();
+        this.maxMemoryChars = builder.maxMemoryChars;
+        this.directory = builder.directory;
+        this.maxDiskBytes = builder.maxDiskBytes;
+        this.staleWhileRevalidateMills = builder.staleWhileRevalidateMills;
+        this.diskExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ResponseCache");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static final class Entry {
+        final String json;
+        final long storedAt;
+        final long expireMs;
+
+        Entry(String json, long storedAt, long expireMs) {
+            this.json = json;
+            this.storedAt = storedAt;
+            this.expireMs = expireMs;
+        }
+
+        boolean isFresh(long now) {
+            return now - this.storedAt < this.expireMs;
+        }
+    }
+
+    public long staleWhileRevalidateMills() {
+        return this.staleWhileRevalidateMills;
+    }
+
+    boolean hasDiskTier() {
+        return this.directory != null;
+    }
+
+    Executor diskExecutor() {
+        return this.diskExecutor;
+    }
+
+    synchronized Entry getFromMemory(String key) {
+        return this.memory.get(key);
+    }
+
+    /**
+     * 先查内存再查磁盘, 磁盘读取会阻塞调用线程
+     */
+    Entry get(String key) {
+        Entry entry = this.getFromMemory(key);
+        if (entry == null && this.directory != null) {
+            entry = this.readDisk(key);
+            if (entry != null) {
+                this.putMemory(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 在调用线程序列化并写入内存, 调用方之后修改 body 不影响缓存; 只有磁盘写入在磁盘线程执行
+     */
+    void put(final String key, Object body, Type type, long expireMs) {
+        final Entry entry = new Entry(this.gson.toJson(body, type), System.currentTimeMillis(), expireMs);
+        this.putMemory(key, entry);
+        if (this.directory == null) {
+            return;
+        }
+        this.diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeDisk(key, entry);
+            }
+        });
+    }
+
+    /**
+     * 每次解码出新的对象
+     */
+    Object decode(Entry entry, Type type) {
+        Object body = this.gson.fromJson(entry.json, type);
+        if (body instanceof DataBody) {
+            ((DataBody) body).setIsFromCache(true);
+        }
+        return body;
+    }
+
+    public synchronized void evictAll() {
+        this.memory.clear();
+        this.memoryChars = 0;
+        if (this.directory != null) {
+            File[] files = this.directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private synchronized void putMemory(String key, Entry entry) {
+        Entry previous = this.memory.put(key, entry);
+        if (previous != null) {
+            this.memoryChars -= previous.json.length();
+        }
+        this.memoryChars += entry.json.length();
+
+        Iterator<Map.Entry<String, Entry>> iterator = this.memory.entrySet().iterator();
+        while (this.memoryChars > this.maxMemoryChars && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            this.memoryChars -= eldest.json.length();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(this.directory, ByteString.encodeUtf8(key).md5().hex());
+    }
+
+    private Entry readDisk(String key) {
+        File file = this.fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Reader reader = null;
+        try {
+            BufferedReader buffered = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            reader = buffered;
+            if (!key.equals(buffered.readLine())) {
+                return null;
+            }
+            long storedAt = Long.parseLong(buffered.readLine());
+            long expireMs = Long.parseLong(buffered.readLine());
+            StringBuilder json = new StringBuilder();
+            char[] buffer = new char[4096];
+            for (int count; (count = buffered.read(buffer)) != -1; ) {
+                json.append(buffer, 0, count);
+            }
+            return new Entry(json.toString(), storedAt, expireMs);
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void writeDisk(String key, Entry entry) {
+        if (this.directory == null) {
+            return;
+        }
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            return;
+        }
+
+        File file = this.fileFor(key);
+        File temp = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            writer.write(key);
+            writer.write('\n');
+            writer.write(String.valueOf(entry.storedAt));
+            writer.write('\n');
+            writer.write(String.valueOf(entry.expireMs));
+            writer.write('\n');
+            writer.write(entry.json);
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            closeQuietly(writer);
+        }
+        this.trimDisk();
+    }
+
+    private void trimDisk() {
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= this.maxDiskBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long diff = o1.lastModified() - o2.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < files.length && size > this.maxDiskBytes; i++) {
+            size -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public static class Builder {
+        private Gson gson;
+        private long maxMemoryChars = 1024 * 1024;
+        private File directory;
+        private long maxDiskBytes = 10 * 1024 * 1024;
+        private long staleWhileRevalidateMills;
+
+        public Builder gson(Gson gson) {
+            this.gson = gson;
+            return this;
+        }
+
+        /**
+         * 内存缓存容量, 以序列化后的 JSON 字符数计算
+         */
+        public Builder maxMemoryChars(long maxMemoryChars) {
+            this.maxMemoryChars = maxMemoryChars;
+            return this;
+        }
+
+        /**
+         * 磁盘缓存目录和容量, 不设置目录时只使用内存缓存
+         */
+        public Builder diskCache(File directory, long maxDiskBytes) {
+            this.directory = directory;
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        /**
+         * 过期后仍可先返回旧数据的时长, 同时在后台重新请求, 新数据会再回调一次; 重新请求失败时不再回调 failure
+         */
+        public Builder staleWhileRevalidateMills(long mills) {
+            this.staleWhileRevalidateMills = mills;
+            return this;
+        }
+
+        public ResponseCache build() {
+            return new ResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 幂等请求(GET/HEAD/PUT/DELETE/OPTIONS)在网络异常或 408/5xx 时按指数退避加随机抖动重试
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Retry {
+
+    /**
+     * 包括第一次在内的最多请求次数
+     */
+    int maxAttempts() default 3;
+
+    long baseDelayMills() default 200;
+
+    long maxDelayMills() default 5000;
+}
@@ -0,0 +1,155 @@
+package com.racofix.basic.http.model;
+
+import com.racofix.basic.http.RealCallback;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * 合并相同的并发请求: method + url + headers 相同的 GET/HEAD 请求只发起一次网络调用, 结果分发给所有等待者.
+ * 有副作用的请求不合并, 也不需要读取请求体.
+ * 单个等待者取消不会影响其它等待者, 只有全部等待者都取消后才取消共享的网络调用.
+ */
+final class SingleFlight {
+
+    private final ConcurrentMap<String, Flight> mFlights = new ConcurrentHashMap<>();
+
+    /**
+     * 不能合并的请求返回 null
+     */
+    static String key(Request request) {
+        String method = request.method();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        return method + ' ' + request.url() + '\n' + request.headers();
+    }
+
+    /**
+     * 加入正在进行的相同请求; 没有时以 call 发起新的请求, 此时返回的 Flight.call == call, 调用方负责执行
+     */
+    <T> Flight<T> join(String key, Call<T> call, Waiter<T> waiter) {
+        for (; ; ) {
+            Flight<T> flight = (Flight<T>) this.mFlights.get(key);
+            if (flight == null) {
+                Flight<T> created = new Flight<>(key, call);
+                created.add(waiter);
+                if (this.mFlights.putIfAbsent(key, created) == null) {
+                    return created;
+                }
+                continue;
+            }
+            if (flight.add(waiter)) {
+                return flight;
+            }
+            this.mFlights.remove(key, flight);
+        }
+    }
+
+    static final class Waiter<T> {
+        final RealCallback<T> callback;
+        volatile boolean canceled;
+
+        Waiter(RealCallback<T> callback) {
+            this.callback = callback;
+        }
+    }
+
+    final class Flight<T> {
+        final String key;
+        final Call<T> call;
+        private final List<Waiter<T>> waiters = new ArrayList<>(2);
+        private boolean done;
+        /**
+         * 所有等待者都已离开, 共享调用已取消, 之后的相同请求发起新的调用
+         */
+        private boolean closed;
+        Response<T> response;
+        Throwable error;
+
+        Flight(String key, Call<T> call) {
+            this.key = key;
+            this.call = call;
+        }
+
+        synchronized boolean add(Waiter<T> waiter) {
+            if (this.done || this.closed) {
+                return false;
+            }
+            this.waiters.add(waiter);
+            return true;
+        }
+
+        void leave(Waiter<T> waiter) {
+            boolean cancel;
+            synchronized (this) {
+                waiter.canceled = true;
+                this.waiters.remove(waiter);
+                cancel = this.waiters.isEmpty() && !this.done;
+                if (cancel) {
+                    this.closed = true;
+                }
+                this.notifyAll();
+            }
+            if (cancel) {
+                mFlights.remove(this.key, this);
+                this.call.cancel();
+            }
+        }
+
+        void complete(Response<T> response, Throwable error) {
+            List<Waiter<T>> waiters;
+            synchronized (this) {
+                this.done = true;
+                this.response = response;
+                this.error = error;
+                waiters = new ArrayList<>(this.waiters);
+                this.notifyAll();
+            }
+            mFlights.remove(this.key, this);
+
+            for (Waiter<T> waiter : waiters) {
+                if (waiter.canceled || waiter.callback == null) {
+                    continue;
+                }
+                if (error != null) {
+                    waiter.callback.failure(error.getMessage());
+                } else {
+                    waiter.callback.successful(response.body());
+                }
+            }
+        }
+
+        /**
+         * 阻塞等待共享调用的结果, waiter 被取消时立即返回
+         */
+        synchronized Response<T> await(Waiter<T> waiter) throws IOException {
+            while (!this.done && !waiter.canceled) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted");
+                }
+            }
+            if (waiter.canceled) {
+                throw new IOException("Canceled");
+            }
+            if (this.error instanceof IOException) {
+                throw (IOException) this.error;
+            }
+            if (this.error != null) {
+                throw new IOException(this.error);
+            }
+            return this.response;
+        }
+    }
+}
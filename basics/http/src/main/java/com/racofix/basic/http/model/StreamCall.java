@@ -0,0 +1,273 @@
+package com.racofix.basic.http.model;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.racofix.basic.http.StreamCallback;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * 流式解析列表响应: 边读取响应体边解码元素, 每凑满 pageSize 个元素回调一次 onPage.
+ * 接口方法需要同时声明 {@code @Streaming}, 否则 Retrofit 会先缓冲整个响应体.
+ * <p>
+ * enqueue 的回调在配置的回调 Executor 上按顺序执行, 解码仍在 OkHttp 线程. 上一页的 onPage 执行完之前
+ * 解码线程不再提交新的页, 内存中最多保留两页(一页等待回调, 一页正在解码), 回调慢于网络时由读取等待;
+ * 回调抛出的异常不会被当作网络错误回调 failure, 而是中止解码后继续抛出.
+ *
+ * @param <T> 列表元素类型
+ */
+public class StreamCall<T> {
+
+    /**
+     * 等待上一页回调时检查取消的间隔
+     */
+    private static final long HANDOFF_POLL_MILLS = 100;
+
+    private final Call<ResponseBody> mRawCall;
+    private final Gson mGson;
+    private final Type mElementType;
+    private final String mPath;
+    private final String[] mPathNames;
+    private final int mPageSize;
+    private final Executor mCallbackExecutor;
+
+    StreamCall(Call<ResponseBody> rawCall, Gson gson, Type elementType, String path, int pageSize,
+               Executor callbackExecutor) {
+        this.mRawCall = rawCall;
+        this.mGson = gson;
+        this.mElementType = elementType;
+        this.mPath = path;
+        this.mPathNames = path == null || path.isEmpty() ? null : path.split("\\.");
+        this.mPageSize = Math.max(1, pageSize);
+        this.mCallbackExecutor = callbackExecutor;
+    }
+
+    public void execute(StreamCallback<T> callback) throws IOException {
+        this.decode(this.mRawCall.execute(), callback);
+    }
+
+    public void enqueue(StreamCallback<T> streamCallback) {
+        final StreamCallback<T> callback = guard(this.dispatch(streamCallback));
+        this.mRawCall.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                try {
+                    decode(response, callback);
+                } catch (CallbackException e) {
+                    mRawCall.cancel();
+                    throw e.getCause();
+                } catch (IOException | RuntimeException e) {
+                    callback.failure(e.getMessage());
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                callback.failure(t.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 把回调切换到 mCallbackExecutor, 未配置时在 OkHttp 线程执行.
+     * 提交下一页前等待上一页回调完成; 等待中请求被取消时丢弃该页
+     */
+    private StreamCallback<T> dispatch(final StreamCallback<T> callback) {
+        if (this.mCallbackExecutor == null) {
+            return callback;
+        }
+        final Semaphore handoff = new Semaphore(1);
+        return new StreamCallback<T>() {
+            @Override
+            public void onPage(final List<T> page) {
+                try {
+                    while (!handoff.tryAcquire(HANDOFF_POLL_MILLS, TimeUnit.MILLISECONDS)) {
+                        if (mRawCall.isCanceled()) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mRawCall.cancel();
+                    return;
+                }
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            callback.onPage(page);
+                        } finally {
+                            handoff.release();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(final int total) {
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onComplete(total);
+                    }
+                });
+            }
+
+            @Override
+            public void failure(final String message) {
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.failure(message);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * 区分回调自身抛出的异常和解码异常
+     */
+    private static <T> StreamCallback<T> guard(final StreamCallback<T> callback) {
+        return new StreamCallback<T>() {
+            @Override
+            public void onPage(List<T> page) {
+                try {
+                    callback.onPage(page);
+                } catch (RuntimeException e) {
+                    throw new CallbackException(e);
+                }
+            }
+
+            @Override
+            public void onComplete(int total) {
+                try {
+                    callback.onComplete(total);
+                } catch (RuntimeException e) {
+                    throw new CallbackException(e);
+                }
+            }
+
+            @Override
+            public void failure(String message) {
+                try {
+                    callback.failure(message);
+                } catch (RuntimeException e) {
+                    throw new CallbackException(e);
+                }
+            }
+        };
+    }
+
+    private static final class CallbackException extends RuntimeException {
+        CallbackException(RuntimeException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized RuntimeException getCause() {
+            return (RuntimeException) super.getCause();
+        }
+    }
+
+    private void decode(Response<ResponseBody> response, StreamCallback<T> callback) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            callback.failure("HTTP " + response.code() + " " + response.message());
+            return;
+        }
+
+        JsonReader reader = new JsonReader(body.charStream());
+        try {
+            if (!this.moveToList(reader, 0)) {
+                callback.onComplete(0);
+                return;
+            }
+
+            int total = 0;
+            List<T> page = new ArrayList<>(this.mPageSize);
+            reader.beginArray();
+            while (reader.hasNext() && !this.mRawCall.isCanceled()) {
+                T item = this.mGson.fromJson(reader, this.mElementType);
+                page.add(item);
+                total++;
+                if (page.size() == this.mPageSize) {
+                    callback.onPage(page);
+                    page = new ArrayList<>(this.mPageSize);
+                }
+            }
+            if (!page.isEmpty()) {
+                callback.onPage(page);
+            }
+            if (this.mRawCall.isCanceled()) {
+                callback.failure("Canceled");
+            } else {
+                callback.onComplete(total);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 定位到列表开始处; 未指定路径时深度优先查找第一个数组
+     */
+    private boolean moveToList(JsonReader reader, int depth) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            return this.mPathNames == null || depth == this.mPathNames.length;
+        }
+        if (token != JsonToken.BEGIN_OBJECT || (this.mPathNames != null && depth >= this.mPathNames.length)) {
+            reader.skipValue();
+            return false;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (this.mPathNames != null && !this.mPathNames[depth].equals(name)) {
+                reader.skipValue();
+            } else if (this.moveToList(reader, depth + 1)) {
+                return true;
+            } else if (this.mPathNames != null) {
+                return false;
+            }
+        }
+        reader.endObject();
+        return false;
+    }
+
+    public boolean isExecuted() {
+        return this.mRawCall.isExecuted();
+    }
+
+    public void cancel() {
+        this.mRawCall.cancel();
+    }
+
+    public boolean isCanceled() {
+        return this.mRawCall.isCanceled();
+    }
+
+    public StreamCall<T> clone() {
+        return new StreamCall<>(this.mRawCall.clone(), this.mGson, this.mElementType, this.mPath, this.mPageSize,
+                this.mCallbackExecutor);
+    }
+
+    public Request request() {
+        return this.mRawCall.request();
+    }
+}
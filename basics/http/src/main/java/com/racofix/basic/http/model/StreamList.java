@@ -0,0 +1,23 @@
+package com.racofix.basic.http.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 配置 {@link StreamCall} 的列表位置和分页大小
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StreamList {
+
+    /**
+     * 列表在 JSON 中的路径, 如 "result.data"; 为空时取第一个出现的数组
+     */
+    String path() default "";
+
+    int pageSize() default 20;
+}
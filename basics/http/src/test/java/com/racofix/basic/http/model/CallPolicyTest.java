@@ -0,0 +1,163 @@
+package com.racofix.basic.http.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class CallPolicyTest {
+
+    @Retry(maxAttempts = 5, baseDelayMills = 100, maxDelayMills = 1000)
+    @Hedge(maxAttempts = 2, percentile = 50, delayMills = 10)
+    void annotated() {
+    }
+
+    @Hedge(maxAttempts = 2, delayMills = 10)
+    void hedged() {
+    }
+
+    void plain() {
+    }
+
+    private static CallPolicy policy(String method) throws NoSuchMethodException {
+        return CallPolicy.from(CallPolicyTest.class.getDeclaredMethod(method).getAnnotations());
+    }
+
+    @Test
+    public void from_nullWithoutAnnotations() throws Exception {
+        assertNull(policy("plain"));
+        assertNotNull(policy("annotated"));
+    }
+
+    @Test
+    public void backoff_fullJitterWithinCap() throws Exception {
+        CallPolicy policy = policy("annotated");
+        long[] caps = {100, 200, 400, 800, 1000, 1000};
+        for (int retries = 0; retries < caps.length; retries++) {
+            long max = 0;
+            for (int i = 0; i < 2000; i++) {
+                long delay = policy.backoffMills(retries);
+                assertTrue(delay >= 0 && delay <= caps[retries]);
+                max = Math.max(max, delay);
+            }
+            assertTrue("retries " + retries + " max " + max, max > caps[retries] / 2);
+        }
+        assertTrue(policy.backoffMills(100) <= 1000);
+    }
+
+    @Test
+    public void retryableCodesAndIdempotentMethods() {
+        assertTrue(CallPolicy.isRetryable(408));
+        assertTrue(CallPolicy.isRetryable(503));
+        assertFalse(CallPolicy.isRetryable(404));
+        assertTrue(CallPolicy.isIdempotent("GET"));
+        assertTrue(CallPolicy.isIdempotent("PUT"));
+        assertFalse(CallPolicy.isIdempotent("POST"));
+    }
+
+    @Test
+    public void hedgeDelay_percentileOfRecordedLatencies() throws Exception {
+        CallPolicy policy = policy("annotated");
+        assertEquals(10, policy.hedgeDelayMills());
+        for (int i = 1; i <= 20; i++) {
+            policy.recordLatency(i * 10);
+        }
+        assertEquals(100, policy.hedgeDelayMills());
+    }
+
+    @Test
+    public void hedgeFailure_keepsRetryableResponse() throws Exception {
+        List<FakeCall> calls = new CopyOnWriteArrayList<>();
+        FakeCall primary = new FakeCall(calls);
+        PolicyCall<String> call = new PolicyCall<>(primary, policy("hedged"));
+
+        final AtomicReference<Object> result = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> c, Response<String> response) {
+                result.set(response);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<String> c, Throwable t) {
+                result.set(t);
+                done.countDown();
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (calls.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, calls.size());
+
+        calls.get(0).callback.onResponse(calls.get(0), Response.<String>error(503,
+                ResponseBody.create(MediaType.parse("text/plain"), "busy")));
+        calls.get(1).callback.onFailure(calls.get(1), new IOException("reset"));
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(result.get() instanceof Response);
+        assertEquals(503, ((Response) result.get()).code());
+    }
+
+    private static final class FakeCall implements Call<String> {
+        final List<FakeCall> calls;
+        volatile Callback<String> callback;
+        volatile boolean canceled;
+
+        FakeCall(List<FakeCall> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public Response<String> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<String> callback) {
+            this.callback = callback;
+            this.calls.add(this);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return this.callback != null;
+        }
+
+        @Override
+        public void cancel() {
+            this.canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return this.canceled;
+        }
+
+        @Override
+        public Call<String> clone() {
+            return new FakeCall(this.calls);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://example.com/").build();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.racofix.basic.http.model;
+
+import com.racofix.basic.http.RealCallback;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private static final String URL = "http://example.com/city?id=1";
+
+    @Test
+    public void key_getAndHeadOnly() {
+        Request get = new Request.Builder().url(URL).build();
+        Request head = get.newBuilder().head().build();
+        Request post = get.newBuilder()
+                .post(RequestBody.create(MediaType.parse("text/plain"), "body"))
+                .build();
+
+        assertNotNull(SingleFlight.key(get));
+        assertNotNull(SingleFlight.key(head));
+        assertNotEquals(SingleFlight.key(get), SingleFlight.key(head));
+        assertNull(SingleFlight.key(post));
+        assertNull(SingleFlight.key(get.newBuilder().delete().build()));
+    }
+
+    @Test
+    public void key_distinguishesUrlAndHeaders() {
+        Request request = new Request.Builder().url(URL).header("Authorization", "a").build();
+
+        assertEquals(SingleFlight.key(request), SingleFlight.key(request.newBuilder().build()));
+        assertNotEquals(SingleFlight.key(request),
+                SingleFlight.key(request.newBuilder().url("http://example.com/city?id=2").build()));
+        assertNotEquals(SingleFlight.key(request),
+                SingleFlight.key(request.newBuilder().header("Authorization", "b").build()));
+    }
+
+    @Test
+    public void join_coalescesUntilComplete() {
+        SingleFlight singleFlight = new SingleFlight();
+        FakeCall first = new FakeCall();
+        FakeCall second = new FakeCall();
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+
+        SingleFlight.Flight<String> leader = singleFlight.join("k", first, new SingleFlight.Waiter<>(a));
+        SingleFlight.Flight<String> follower = singleFlight.join("k", second, new SingleFlight.Waiter<>(b));
+        assertSame(leader, follower);
+        assertSame(first, follower.call);
+
+        leader.complete(Response.success("value"), null);
+        assertEquals("[value]", a.results.toString());
+        assertEquals("[value]", b.results.toString());
+
+        FakeCall third = new FakeCall();
+        assertSame(third, singleFlight.join("k", third, new SingleFlight.Waiter<>(new Recorder())).call);
+    }
+
+    @Test
+    public void leave_cancelsSharedCallOnlyWhenLastWaiterLeaves() {
+        SingleFlight singleFlight = new SingleFlight();
+        FakeCall call = new FakeCall();
+        SingleFlight.Waiter<String> a = new SingleFlight.Waiter<>(new Recorder());
+        Recorder recorder = new Recorder();
+        SingleFlight.Waiter<String> b = new SingleFlight.Waiter<>(recorder);
+        SingleFlight.Flight<String> flight = singleFlight.join("k", call, a);
+        singleFlight.join("k", new FakeCall(), b);
+
+        flight.leave(a);
+        assertFalse(call.canceled);
+        flight.leave(b);
+        assertTrue(call.canceled);
+
+        flight.complete(null, new IOException("Canceled"));
+        assertTrue(recorder.results.isEmpty());
+    }
+
+    @Test
+    public void join_afterLastWaiterLeft_startsNewFlight() {
+        SingleFlight singleFlight = new SingleFlight();
+        FakeCall first = new FakeCall();
+        SingleFlight.Waiter<String> waiter = new SingleFlight.Waiter<>(new Recorder());
+        SingleFlight.Flight<String> flight = singleFlight.join("k", first, waiter);
+        flight.leave(waiter);
+        assertTrue(first.canceled);
+
+        FakeCall second = new FakeCall();
+        Recorder recorder = new Recorder();
+        SingleFlight.Flight<String> next = singleFlight.join("k", second, new SingleFlight.Waiter<>(recorder));
+        assertNotSame(flight, next);
+        assertSame(second, next.call);
+
+        flight.complete(null, new IOException("Canceled"));
+        assertSame(next, singleFlight.join("k", new FakeCall(), new SingleFlight.Waiter<>(new Recorder())));
+        next.complete(Response.success("value"), null);
+        assertEquals("[value]", recorder.results.toString());
+    }
+
+    @Test
+    public void await_returnsWhenFollowerCanceled() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        final SingleFlight.Flight<String> flight = singleFlight.join("k", new FakeCall(),
+                new SingleFlight.Waiter<String>(null));
+        final SingleFlight.Waiter<String> follower = new SingleFlight.Waiter<>(null);
+        singleFlight.join("k", new FakeCall(), follower);
+
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final CountDownLatch returned = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flight.await(follower);
+                } catch (Throwable e) {
+                    thrown.set(e);
+                }
+                returned.countDown();
+            }
+        });
+        thread.start();
+        assertFalse(returned.await(100, TimeUnit.MILLISECONDS));
+
+        flight.leave(follower);
+        assertTrue(returned.await(1, TimeUnit.SECONDS));
+        assertTrue(thrown.get() instanceof IOException);
+    }
+
+    private static final class Recorder implements RealCallback<String> {
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public void successful(String s) {
+            this.results.add(s);
+        }
+
+        @Override
+        public void failure(String message) {
+            this.results.add("failure: " + message);
+        }
+    }
+
+    private static final class FakeCall implements Call<String> {
+        volatile boolean canceled;
+
+        @Override
+        public Response<String> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<String> callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return false;
+        }
+
+        @Override
+        public void cancel() {
+            this.canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return this.canceled;
+        }
+
+        @Override
+        public Call<String> clone() {
+            return new FakeCall();
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url(URL).build();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.racofix.basic.http.model;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.racofix.basic.http.StreamCallback;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class StreamCallTest {
+
+    @Test
+    public void enqueue_slowExecutorHoldsAtMostTwoPages() throws Exception {
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 200; i++) {
+            json.append(i > 0 ? "," : "").append(i);
+        }
+        json.append("]}");
+
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+        final AtomicInteger decoded = new AtomicInteger();
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger maxHeld = new AtomicInteger();
+        final CountDownLatch complete = new CountDownLatch(1);
+        Executor slow = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                ui.execute(command);
+            }
+        };
+        StreamCall<Integer> call = new StreamCall<>(new FakeCall(json.toString()), new GsonBuilder()
+                .registerTypeAdapter(Integer.class, new TypeAdapter<Integer>() {
+                    @Override
+                    public void write(JsonWriter out, Integer value) throws IOException {
+                        out.value(value);
+                    }
+
+                    @Override
+                    public Integer read(JsonReader in) throws IOException {
+                        decoded.incrementAndGet();
+                        return in.nextInt();
+                    }
+                }).create(), Integer.class,
+                "data", 10, slow);
+        call.enqueue(new StreamCallback<Integer>() {
+            @Override
+            public void onPage(List<Integer> page) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) {
+                }
+                delivered.addAndGet(page.size());
+            }
+
+            @Override
+            public void onComplete(int count) {
+                total.set(count);
+                complete.countDown();
+            }
+
+            @Override
+            public void failure(String message) {
+                complete.countDown();
+            }
+        });
+
+        while (complete.getCount() > 0) {
+            int held = decoded.get() - delivered.get();
+            maxHeld.set(Math.max(maxHeld.get(), held));
+            complete.await(1, TimeUnit.MILLISECONDS);
+        }
+        ui.shutdown();
+        assertEquals(200, total.get());
+        assertEquals(200, delivered.get());
+        assertTrue("held " + maxHeld.get(), maxHeld.get() <= 20);
+    }
+
+    private static final class FakeCall implements Call<ResponseBody> {
+        final String json;
+        volatile boolean canceled;
+
+        FakeCall(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public Response<ResponseBody> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(final Callback<ResponseBody> callback) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onResponse(FakeCall.this, Response.success(ResponseBody.create(
+                            MediaType.parse("application/json"), FakeCall.this.json)));
+                }
+            }).start();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            this.canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return this.canceled;
+        }
+
+        @Override
+        public Call<ResponseBody> clone() {
+            return new FakeCall(this.json);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://example.com/").build();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.racofix.basic.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同时输出到多个 LogTool, 例如:
+ * <pre>
+ * new CompositeLogTool.Builder()
+ *         .addSink(new AndroidLogTool(), Log.WARN)
+ *         .addSink(new FileLogTool(file), Log.DEBUG, 1024)
+ *         .build();
+ * </pre>
+ * 每个 sink 有独立的级别; 指定了队列容量的 sink 拥有自己的有界队列和工作线程,
+ * 队列满时直接丢弃并计数, 调用线程和其它 sink 不会被阻塞.
+ * 结构化事件原样转发给实现了 {@link StructuredLogTool} 的 sink, 异步 sink 收到的是事件副本.
+ */
+public final class CompositeLogTool implements StructuredLogTool {
+
+    private final Sink[] sinks;
+
+    private CompositeLogTool(Builder builder) {
+        this.sinks = builder.sinks.toArray(new Sink[builder.sinks.size()]);
+    }
+
+    public void d(String tag, String message) {
+        this.dispatch(3, tag, message);
+    }
+
+    public void e(String tag, String message) {
+        this.dispatch(6, tag, message);
+    }
+
+    public void w(String tag, String message) {
+        this.dispatch(5, tag, message);
+    }
+
+    public void i(String tag, String message) {
+        this.dispatch(4, tag, message);
+    }
+
+    public void v(String tag, String message) {
+        this.dispatch(2, tag, message);
+    }
+
+    public void wtf(String tag, String message) {
+        this.dispatch(7, tag, message);
+    }
+
+    @Override
+    public void log(int priority, String tag, String message, LogEvent event) {
+        LogEvent copy = null;
+        for (Sink sink : this.sinks) {
+            if (priority < sink.minPriority) {
+                continue;
+            }
+            if (!(sink.tool instanceof StructuredLogTool)) {
+                sink.offer(priority, tag, message, null);
+            } else if (sink.queue == null) {
+                sink.offer(priority, tag, message, event);
+            } else {
+                if (copy == null) {
+                    copy = event.copy();
+                }
+                sink.offer(priority, tag, message, copy);
+            }
+        }
+    }
+
+    /**
+     * 停止所有异步 sink 的工作线程, 队列中剩余的记录会被丢弃, 之后的记录也不再接收
+     */
+    public void shutdown() {
+        for (Sink sink : this.sinks) {
+            sink.shutdown();
+        }
+    }
+
+    private void dispatch(int priority, String tag, String message) {
+        for (Sink sink : this.sinks) {
+            if (priority >= sink.minPriority) {
+                sink.offer(priority, tag, message, null);
+            }
+        }
+    }
+
+    private static void write(LogTool tool, int priority, String tag, String message, LogEvent event) {
+        if (event != null) {
+            ((StructuredLogTool) tool).log(priority, tag, message, event);
+            return;
+        }
+        switch (priority) {
+            case 2:
+                tool.v(tag, message);
+                break;
+            case 3:
+            default:
+                tool.d(tag, message);
+                break;
+            case 4:
+                tool.i(tag, message);
+                break;
+            case 5:
+                tool.w(tag, message);
+                break;
+            case 6:
+                tool.e(tag, message);
+                break;
+            case 7:
+                tool.wtf(tag, message);
+        }
+    }
+
+    private static final class Record {
+        final int priority;
+        final String tag;
+        final String message;
+        final LogEvent event;
+
+        Record(int priority, String tag, String message, LogEvent event) {
+            this.priority = priority;
+            this.tag = tag;
+            this.message = message;
+            this.event = event;
+        }
+    }
+
+    private static final class Sink implements Runnable {
+        final LogTool tool;
+        final int minPriority;
+        final BlockingQueue<Record> queue;
+        final AtomicInteger dropped = new AtomicInteger();
+        volatile Thread worker;
+        volatile boolean shutdown;
+
+        Sink(LogTool tool, int minPriority, int queueCapacity) {
+            this.tool = tool;
+            this.minPriority = minPriority;
+            if (queueCapacity > 0) {
+                this.queue = new ArrayBlockingQueue<>(queueCapacity);
+                this.worker = new Thread(this, "LogSink-" + tool.getClass().getSimpleName());
+                this.worker.setDaemon(true);
+                this.worker.start();
+            } else {
+                this.queue = null;
+            }
+        }
+
+        void offer(int priority, String tag, String message, LogEvent event) {
+            if (this.queue == null) {
+                write(this.tool, priority, tag, message, event);
+            } else if (this.shutdown || !this.queue.offer(new Record(priority, tag, message, event))) {
+                this.dropped.incrementAndGet();
+            }
+        }
+
+        void shutdown() {
+            this.shutdown = true;
+            Thread worker = this.worker;
+            if (worker != null) {
+                this.worker = null;
+                worker.interrupt();
+            }
+            if (this.queue != null) {
+                this.queue.clear();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!this.shutdown) {
+                    Record record = this.queue.take();
+                    int dropped = this.dropped.getAndSet(0);
+                    try {
+                        if (dropped > 0) {
+                            this.tool.w(record.tag, dropped + " log records dropped");
+                        }
+                        write(this.tool, record.priority, record.tag, record.message, record.event);
+                    } catch (RuntimeException ignored) {
+                        // 单条写入失败不影响后续日志
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                // shutdown
+            }
+        }
+    }
+
+    public static class Builder {
+        private final List<Sink> sinks = new ArrayList<>();
+
+        /**
+         * 同步 sink, 在调用线程直接输出
+         */
+        public Builder addSink(LogTool tool, int minPriority) {
+            return this.addSink(tool, minPriority, 0);
+        }
+
+        /**
+         * 异步 sink, queueCapacity 大于0时使用独立的有界队列和工作线程
+         */
+        public Builder addSink(LogTool tool, int minPriority, int queueCapacity) {
+            if (tool == null) {
+                throw new NullPointerException("tool == null");
+            }
+            this.sinks.add(new Sink(tool, minPriority, queueCapacity));
+            return this;
+        }
+
+        public CompositeLogTool build() {
+            return new CompositeLogTool(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.racofix.basic.logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * 追加写入文件的 LogTool, WARN 及以上级别或缓冲超过 8K 时刷新.
+ * 写文件较慢, 建议作为 {@link CompositeLogTool} 的异步 sink 使用.
+ */
+public class FileLogTool implements LogTool {
+
+    private static final int FLUSH_THRESHOLD = 8 * 1024;
+    private static final char[] LEVELS = {'?', '?', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private final File file;
+    private Writer writer;
+    private int pending;
+
+    public FileLogTool(File file) {
+        this.file = file;
+    }
+
+    public void d(String tag, String message) {
+        this.write(3, tag, message);
+    }
+
+    public void e(String tag, String message) {
+        this.write(6, tag, message);
+    }
+
+    public void w(String tag, String message) {
+        this.write(5, tag, message);
+    }
+
+    public void i(String tag, String message) {
+        this.write(4, tag, message);
+    }
+
+    public void v(String tag, String message) {
+        this.write(2, tag, message);
+    }
+
+    public void wtf(String tag, String message) {
+        this.write(7, tag, message);
+    }
+
+    public synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException ignored) {
+            }
+            this.writer = null;
+        }
+    }
+
+    private synchronized void write(int priority, String tag, String message) {
+        try {
+            if (this.writer == null) {
+                File parent = this.file.getParentFile();
+                if (parent != null && !parent.exists()) {
+                    parent.mkdirs();
+                }
+                this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), "UTF-8"));
+            }
+            this.writer.write(String.valueOf(System.currentTimeMillis()));
+            this.writer.write(' ');
+            this.writer.write(LEVELS[priority & 7]);
+            this.writer.write('/');
+            this.writer.write(tag);
+            this.writer.write(": ");
+            this.writer.write(message);
+            this.writer.write('\n');
+            this.pending += message.length();
+            if (priority >= 5 || this.pending >= FLUSH_THRESHOLD) {
+                this.writer.flush();
+                this.pending = 0;
+            }
+        } catch (IOException e) {
+            this.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.racofix.basic.logger;
+
+/**
+ * 逐字符缩进 JSON, 不解析为 JSONObject/JSONArray. 只检查括号配对和字符串是否闭合,
+ * 第一个错误通过 {@link #error()} 返回, 格式化仍尽力完成
+ */
+final class JsonFormatter extends StreamFormatter {
+
+    /**
+     * 尚未闭合的括号, 可复用
+     */
+    private final StringBuilder open = new StringBuilder();
+
+    JsonFormatter(int indentWidth) {
+        super(indentWidth);
+    }
+
+    @Override
+    void doFormat(String input, int end) {
+        boolean inString = false;
+        boolean escape = false;
+        boolean closed = false;
+        open.setLength(0);
+        for (int i = 0; i < end; i++) {
+            char c = input.charAt(i);
+            if (inString) {
+                append(c);
+                if (escape) {
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (closed && !Character.isWhitespace(c)) {
+                error("Unexpected '" + c + "' after top-level value", i);
+                closed = false;
+            }
+            switch (c) {
+                case '"':
+                    inString = true;
+                    append(c);
+                    break;
+                case '{':
+                case '[':
+                    append(c);
+                    open.append(c);
+                    int next = skipWhitespace(input, i + 1, end);
+                    char close = c == '{' ? '}' : ']';
+                    if (next < end && input.charAt(next) == close) {
+                        append(close);
+                        open.setLength(open.length() - 1);
+                        closed = open.length() == 0;
+                        i = next;
+                    } else {
+                        indent();
+                        newLine();
+                    }
+                    break;
+                case '}':
+                case ']':
+                    int last = open.length() - 1;
+                    if (last < 0 || (open.charAt(last) == '{') != (c == '}')) {
+                        error("Unexpected '" + c + "'", i);
+                    } else {
+                        open.setLength(last);
+                        closed = last == 0;
+                    }
+                    unindent();
+                    newLine();
+                    append(c);
+                    break;
+                case ',':
+                    append(c);
+                    newLine();
+                    break;
+                case ':':
+                    append(c);
+                    append(' ');
+                    break;
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    break;
+                default:
+                    append(c);
+            }
+        }
+
+        if (end == input.length()) {
+            if (inString) {
+                error("Unterminated string", end);
+            } else if (open.length() > 0) {
+                error(open.charAt(open.length() - 1) == '{' ? "Unterminated object" : "Unterminated array", end);
+            }
+        }
+    }
+
+    private static int skipWhitespace(String input, int from, int end) {
+        while (from < end && Character.isWhitespace(input.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,228 @@
+package com.racofix.basic.logger;
+
+/**
+ * 结构化日志事件, 例如:
+ * <pre>
+ * Logger.at(Log.DEBUG).kv("addr", addr).kv("rssi", rssi).log("scan");
+ * </pre>
+ * 事件对象按线程复用, log() 之后即被回收, 不能保存引用.
+ * 基本类型字段存放在 long[] 中, 不会装箱.
+ */
+public final class LogEvent {
+
+    public static final byte TYPE_LONG = 0;
+    public static final byte TYPE_DOUBLE = 1;
+    public static final byte TYPE_BOOLEAN = 2;
+    public static final byte TYPE_OBJECT = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final ThreadLocal<LogEvent> POOL = new ThreadLocal<>();
+
+    private final StringBuilder builder = new StringBuilder(128);
+    private String[] keys;
+    private byte[] types;
+    private long[] primitives;
+    private Object[] objects;
+    private int size;
+    private int priority;
+    private String tag;
+    private String message;
+    private Printer printer;
+    private boolean inUse;
+
+    private LogEvent() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private LogEvent(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.keys = new String[capacity];
+        this.types = new byte[capacity];
+        this.primitives = new long[capacity];
+        this.objects = new Object[capacity];
+    }
+
+    static LogEvent obtain(Printer printer, int priority) {
+        LogEvent event = POOL.get();
+        if (event == null) {
+            event = new LogEvent();
+            POOL.set(event);
+        } else if (event.inUse) {
+            event = new LogEvent();
+        }
+        event.inUse = true;
+        event.printer = printer;
+        event.priority = priority;
+        return event;
+    }
+
+    public LogEvent tag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    public LogEvent kv(String key, int value) {
+        return this.put(key, TYPE_LONG, value, null);
+    }
+
+    public LogEvent kv(String key, long value) {
+        return this.put(key, TYPE_LONG, value, null);
+    }
+
+    public LogEvent kv(String key, double value) {
+        return this.put(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public LogEvent kv(String key, boolean value) {
+        return this.put(key, TYPE_BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public LogEvent kv(String key, Object value) {
+        return this.put(key, TYPE_OBJECT, 0, value);
+    }
+
+    public void log(String message) {
+        this.message = message;
+        try {
+            this.printer.log(this);
+        } finally {
+            this.recycle();
+        }
+    }
+
+    public int priority() {
+        return this.priority;
+    }
+
+    public String tag() {
+        return this.tag;
+    }
+
+    public String message() {
+        return this.message;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public String key(int index) {
+        return this.keys[index];
+    }
+
+    public byte type(int index) {
+        return this.types[index];
+    }
+
+    public long longValue(int index) {
+        return this.primitives[index];
+    }
+
+    public double doubleValue(int index) {
+        return Double.longBitsToDouble(this.primitives[index]);
+    }
+
+    public boolean booleanValue(int index) {
+        return this.primitives[index] != 0;
+    }
+
+    public Object value(int index) {
+        switch (this.types[index]) {
+            case TYPE_LONG:
+                return this.longValue(index);
+            case TYPE_DOUBLE:
+                return this.doubleValue(index);
+            case TYPE_BOOLEAN:
+                return this.booleanValue(index);
+            default:
+                return this.objects[index];
+        }
+    }
+
+    /**
+     * 渲染为 "message key=value key=value" 形式的文本
+     */
+    public String render() {
+        StringBuilder builder = this.builder;
+        builder.setLength(0);
+        if (this.message != null) {
+            builder.append(this.message);
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(this.keys[i]).append('=');
+            switch (this.types[i]) {
+                case TYPE_LONG:
+                    builder.append(this.primitives[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    builder.append(this.doubleValue(i));
+                    break;
+                case TYPE_BOOLEAN:
+                    builder.append(this.booleanValue(i));
+                    break;
+                default:
+                    builder.append(this.objects[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 不参与复用的副本, 供异步输出保存. 对象字段按 String.valueOf 固定为当前值
+     */
+    LogEvent copy() {
+        LogEvent copy = new LogEvent(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Object object = this.objects[i];
+            copy.put(this.keys[i], this.types[i], this.primitives[i],
+                    object == null || object instanceof String ? object : String.valueOf(object));
+        }
+        copy.priority = this.priority;
+        copy.tag = this.tag;
+        copy.message = this.message;
+        return copy;
+    }
+
+    private LogEvent put(String key, byte type, long primitive, Object object) {
+        if (this.size == this.keys.length) {
+            this.grow();
+        }
+        this.keys[this.size] = key;
+        this.types[this.size] = type;
+        this.primitives[this.size] = primitive;
+        this.objects[this.size] = object;
+        this.size++;
+        return this;
+    }
+
+    private void grow() {
+        int capacity = this.keys.length << 1;
+        String[] keys = new String[capacity];
+        byte[] types = new byte[capacity];
+        long[] primitives = new long[capacity];
+        Object[] objects = new Object[capacity];
+        System.arraycopy(this.keys, 0, keys, 0, this.size);
+        System.arraycopy(this.types, 0, types, 0, this.size);
+        System.arraycopy(this.primitives, 0, primitives, 0, this.size);
+        System.arraycopy(this.objects, 0, objects, 0, this.size);
+        this.keys = keys;
+        this.types = types;
+        this.primitives = primitives;
+        this.objects = objects;
+    }
+
+    private void recycle() {
+        for (int i = 0; i < this.size; i++) {
+            this.keys[i] = null;
+            this.objects[i] = null;
+        }
+        this.size = 0;
+        this.tag = null;
+        this.message = null;
+        this.printer = null;
+        this.inUse = false;
+    }
+}
@@ -0,0 +1,352 @@
+package com.racofix.basic.logger;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按 tag 和调用点限流/采样日志.
+ * <p>
+ * 调用点以格式化字符串的引用区分(同一行代码的字面量是同一个对象), 不需要抓取堆栈.
+ * 因此格式化字符串应当是常量, 变化的部分通过 args 传入; 用 "x" + y 拼接出的消息每次都是新对象,
+ * 会各自占用一个桶(每个都有完整的 burst), 表满后落到该 tag 共用的桶, 只受 tag 级别的限流.
+ * 令牌桶采用 GCRA 算法, 每个桶只有一个 CAS 状态; 桶存放在按哈希分段的无锁表中,
+ * 空闲超过 {@link #IDLE_NANOS} 且令牌已补满的桶可被其他调用点 CAS 替换.
+ * 找不到空位时退回到该 tag 共用的桶, 不会因为表满而放行.
+ * 被丢弃的条数会在 summaryInterval 之后随下一条放行的日志一起汇报; 设置了 {@link Reporter} 时还会按
+ * summaryInterval 定时汇报, 不依赖同一调用点再次打印. 空闲桶被替换时尚未汇报的条数立即交给 Reporter.
+ */
+public final class LogRateLimiter {
+
+    public static final int DENIED = -1;
+
+    private static final int MAX_PROBE = 8;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final Object TAG_SITE = new Object();
+    private static final Object OVERFLOW_SITE = new Object();
+    private static final ScheduledExecutorService sScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LogRateLimiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * 汇报被丢弃的条数, 可能在定时线程或打印日志的线程调用
+     */
+    public interface Reporter {
+        void report(String tag, int suppressed);
+    }
+
+    private final AtomicReferenceArray<Bucket> table;
+    private final int mask;
+    private final Policy callSitePolicy;
+    private final Policy tagPolicy;
+    private final Map<String, Policy> tagPolicies;
+    private final long summaryIntervalNanos;
+    /**
+     * 连 tag 桶也放不下时所有调用点共用
+     */
+    private final Bucket overflow = new Bucket(null, OVERFLOW_SITE, System.nanoTime());
+    private volatile Reporter reporter;
+    private ScheduledFuture<?> summaryTask;
+
+    private LogRateLimiter(Builder builder) {
+        int capacity = Integer.highestOneBit(Math.max(builder.capacity, MAX_PROBE) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.callSitePolicy = new Policy(builder.callSiteRate, builder.callSiteBurst, builder.sampleEvery);
+        this.tagPolicy = builder.tagPolicy;
+        this.tagPolicies = new HashMap<>(builder.tagPolicies);
+        this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.summaryIntervalMillis);
+    }
+
+    /**
+     * 设置后按 summaryInterval 定时汇报, 重复设置同一个 Reporter 没有开销
+     */
+    public void setReporter(Reporter reporter) {
+        if (this.reporter == reporter) {
+            return;
+        }
+        synchronized (this) {
+            this.reporter = reporter;
+            if (reporter != null && this.summaryTask == null && this.summaryIntervalNanos > 0) {
+                this.summaryTask = sScheduler.scheduleAtFixedRate(new SummaryTask(this),
+                        this.summaryIntervalNanos, this.summaryIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 汇报所有已过 summaryInterval 的桶
+     */
+    void reportSuppressed(long now) {
+        Reporter reporter = this.reporter;
+        if (reporter == null) {
+            return;
+        }
+        for (int i = 0; i < this.table.length(); i++) {
+            Bucket bucket = this.table.get(i);
+            if (bucket != null) {
+                this.report(reporter, bucket, bucket.drainSuppressed(now, this.summaryIntervalNanos));
+            }
+        }
+        this.report(reporter, this.overflow, this.overflow.drainSuppressed(now, this.summaryIntervalNanos));
+    }
+
+    private void report(Reporter reporter, Bucket bucket, int suppressed) {
+        if (suppressed > 0) {
+            reporter.report(bucket.tag, suppressed);
+        }
+    }
+
+    /**
+     * 只弱引用限流器, 限流器不再使用后取消定时任务
+     */
+    private static final class SummaryTask implements Runnable {
+        private final WeakReference<LogRateLimiter> limiter;
+
+        SummaryTask(LogRateLimiter limiter) {
+            this.limiter = new WeakReference<>(limiter);
+        }
+
+        @Override
+        public void run() {
+            LogRateLimiter limiter = this.limiter.get();
+            if (limiter == null) {
+                throw new IllegalStateException("collected");
+            }
+            limiter.reportSuppressed(System.nanoTime());
+        }
+    }
+
+    /**
+     * @return {@link #DENIED} 表示丢弃; 否则放行, 返回值为需要汇报的已丢弃条数
+     */
+    public int acquire(String tag, Object callSite) {
+        return this.acquire(tag, callSite, System.nanoTime());
+    }
+
+    int acquire(String tag, Object callSite, long now) {
+        Policy policy = this.tagPolicies.get(tag);
+        if (policy == null) {
+            policy = this.tagPolicy;
+        }
+
+        Bucket site = this.bucket(tag, callSite, now);
+        if (site == null) {
+            site = this.bucket(tag, OVERFLOW_SITE, now);
+            if (site == null) {
+                site = this.overflow;
+            }
+        }
+
+        int sampleEvery = policy.sampleEvery > 1 ? policy.sampleEvery : this.callSitePolicy.sampleEvery;
+        if (sampleEvery > 1 && site.sampled.incrementAndGet() % sampleEvery != 0) {
+            return site.suppress();
+        }
+
+        if (!site.tryAcquire(now, this.callSitePolicy)) {
+            return site.suppress();
+        }
+
+        if (policy.interval > 0) {
+            Bucket tagBucket = this.bucket(tag, TAG_SITE, now);
+            if (tagBucket != null && !tagBucket.tryAcquire(now, policy)) {
+                return site.suppress();
+            }
+        }
+
+        return site.drainSuppressed(now, this.summaryIntervalNanos);
+    }
+
+    private Bucket bucket(String tag, Object callSite, long now) {
+        int h = (tag == null ? 0 : tag.hashCode()) * 31 + System.identityHashCode(callSite);
+        h ^= (h >>> 16);
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int index = (h + probe) & this.mask;
+            Bucket bucket = this.table.get(index);
+            if (bucket != null && bucket.matches(tag, callSite)) {
+                bucket.lastUse = now;
+                return bucket;
+            }
+            if (bucket == null || bucket.isIdle(now)) {
+                Bucket created = new Bucket(tag, callSite, now);
+                if (this.table.compareAndSet(index, bucket, created)) {
+                    if (bucket != null) {
+                        this.retire(bucket, created);
+                    }
+                    return created;
+                }
+                bucket = this.table.get(index);
+                if (bucket != null && bucket.matches(tag, callSite)) {
+                    bucket.lastUse = now;
+                    return bucket;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 被替换的桶尚未汇报的条数交给 Reporter, 没有 Reporter 时转到新桶随下一次汇报
+     */
+    private void retire(Bucket retired, Bucket created) {
+        int suppressed = retired.suppressed.getAndSet(0);
+        if (suppressed > 0) {
+            Reporter reporter = this.reporter;
+            if (reporter != null) {
+                reporter.report(retired.tag, suppressed);
+            } else {
+                created.suppressed.addAndGet(suppressed);
+            }
+        }
+    }
+
+    private static final class Policy {
+        final long interval;
+        final long tolerance;
+        final int sampleEvery;
+
+        Policy(double permitsPerSecond, int burst, int sampleEvery) {
+            this.interval = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+            this.tolerance = this.interval * (Math.max(burst, 1) - 1);
+            this.sampleEvery = sampleEvery;
+        }
+    }
+
+    private static final class Bucket {
+        final String tag;
+        final Object callSite;
+        final AtomicLong tat;
+        final AtomicInteger sampled = new AtomicInteger();
+        final AtomicInteger suppressed = new AtomicInteger();
+        final AtomicLong lastReport;
+        volatile long lastUse;
+
+        Bucket(String tag, Object callSite, long now) {
+            this.tag = tag;
+            this.callSite = callSite;
+            this.tat = new AtomicLong(now);
+            this.lastReport = new AtomicLong(now);
+            this.lastUse = now;
+        }
+
+        /**
+         * 令牌已补满时替换不会让新调用点多拿到配额
+         */
+        boolean isIdle(long now) {
+            return now - this.lastUse > IDLE_NANOS && this.tat.get() - now <= 0;
+        }
+
+        boolean matches(String tag, Object callSite) {
+            return this.callSite == callSite && (this.tag == null ? tag == null : this.tag.equals(tag));
+        }
+
+        boolean tryAcquire(long now, Policy policy) {
+            if (policy.interval <= 0) {
+                return true;
+            }
+            for (; ; ) {
+                long current = this.tat.get();
+                long base = current - now > 0 ? current : now;
+                if (base - now > policy.tolerance) {
+                    return false;
+                }
+                if (this.tat.compareAndSet(current, base + policy.interval)) {
+                    return true;
+                }
+            }
+        }
+
+        int suppress() {
+            this.suppressed.incrementAndGet();
+            return DENIED;
+        }
+
+        int drainSuppressed(long now, long summaryIntervalNanos) {
+            if (this.suppressed.get() == 0) {
+                return 0;
+            }
+            long last = this.lastReport.get();
+            if (now - last < summaryIntervalNanos || !this.lastReport.compareAndSet(last, now)) {
+                return 0;
+            }
+            return this.suppressed.getAndSet(0);
+        }
+    }
+
+    public static class Builder {
+        private int capacity = 256;
+        private double callSiteRate;
+        private int callSiteBurst = 1;
+        private int sampleEvery = 1;
+        private Policy tagPolicy = new Policy(0, 1, 1);
+        private final Map<String, Policy> tagPolicies = new HashMap<>();
+        private long summaryIntervalMillis = 5000;
+
+        /**
+         * 限流表容量, 即可同时跟踪的 tag/调用点数量, 向上取整为2的幂
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * 每个调用点的速率, permitsPerSecond 小于等于0表示不限速
+         */
+        public Builder callSiteRate(double permitsPerSecond, int burst) {
+            this.callSiteRate = permitsPerSecond;
+            this.callSiteBurst = burst;
+            return this;
+        }
+
+        /**
+         * 每个调用点只保留 1/n 条
+         */
+        public Builder sampleEvery(int n) {
+            this.sampleEvery = n;
+            return this;
+        }
+
+        /**
+         * 每个 tag 的总速率, 对所有调用点合并计数
+         */
+        public Builder tagRate(double permitsPerSecond, int burst) {
+            this.tagPolicy = new Policy(permitsPerSecond, burst, 1);
+            return this;
+        }
+
+        /**
+         * 单独指定某个 tag 的速率与采样, 覆盖 tagRate/sampleEvery
+         */
+        public Builder tag(String tag, double permitsPerSecond, int burst, int sampleEvery) {
+            this.tagPolicies.put(tag, new Policy(permitsPerSecond, burst, sampleEvery));
+            return this;
+        }
+
+        /**
+         * "N messages suppressed" 汇报的最小间隔
+         */
+        public Builder summaryIntervalMillis(long intervalMillis) {
+            this.summaryIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        public LogRateLimiter build() {
+            return new LogRateLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.racofix.basic.logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近 N 条日志的环形缓冲, 用于崩溃后的现场分析.
+ * <p>
+ * 所有数组在创建时分配. 记录时参数中的基本类型和字符串按值复制到槽位, 其它对象保存 String.valueOf 的结果,
+ * 不持有调用方的参数数组和对象; 格式化推迟到 dump 时进行, 每条最多保存 {@link #MAX_ARGS} 个参数.
+ * 写入不加锁, 写者先用 CAS 把槽位序号改为 {@link #BUSY} 独占槽位, 写完再发布自己的序号;
+ * 落后整整一圈的写者与其它写者抢同一槽位时, 没抢到的一方丢弃这一条. dump 在读取前后比较序号, 跳过未写完或被覆盖的槽位.
+ */
+public final class LogRing {
+
+    static final int MAX_ARGS = 8;
+
+    /**
+     * 槽位正在被写入
+     */
+    private static final long BUSY = -2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_CHAR = 6;
+    private static final byte TYPE_STRING = 7;
+
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final int[] priorities;
+    private final String[] tags;
+    private final String[] threads;
+    private final String[] messages;
+    private final int[] argCounts;
+    private final byte[] argTypes;
+    private final long[] argPrimitives;
+    private final String[] argStrings;
+
+    public LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.times = new long[size];
+        this.priorities = new int[size];
+        this.tags = new String[size];
+        this.threads = new String[size];
+        this.messages = new String[size];
+        this.argCounts = new int[size];
+        this.argTypes = new byte[size * MAX_ARGS];
+        this.argPrimitives = new long[size * MAX_ARGS];
+        this.argStrings = new String[size * MAX_ARGS];
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, -1);
+        }
+    }
+
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    public void record(int priority, String tag, String message, Object[] args) {
+        long sequence = this.cursor.getAndIncrement();
+        int index = (int) (sequence & this.mask);
+        for (; ; ) {
+            long current = this.sequences.get(index);
+            if (current == BUSY || current > sequence) {
+                return;
+            }
+            if (this.sequences.compareAndSet(index, current, BUSY)) {
+                break;
+            }
+        }
+        this.times[index] = System.currentTimeMillis();
+        this.priorities[index] = priority;
+        this.tags[index] = tag;
+        this.threads[index] = Thread.currentThread().getName();
+        this.messages[index] = message;
+        int count = args == null ? 0 : Math.min(args.length, MAX_ARGS);
+        int base = index * MAX_ARGS;
+        for (int i = 0; i < count; i++) {
+            this.copyArg(base + i, args[i]);
+        }
+        for (int i = count; i < MAX_ARGS; i++) {
+            this.argStrings[base + i] = null;
+        }
+        this.argCounts[index] = count;
+        this.sequences.set(index, sequence);
+    }
+
+    public void dump(Writer writer) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        long end = this.cursor.get();
+        long start = Math.max(0, end - this.capacity());
+        for (long sequence = start; sequence < end; sequence++) {
+            int index = (int) (sequence & this.mask);
+            if (this.sequences.get(index) != sequence) {
+                continue;
+            }
+            long time = this.times[index];
+            int priority = this.priorities[index];
+            String tag = this.tags[index];
+            String thread = this.threads[index];
+            String message = this.messages[index];
+            Object[] args = this.args(index);
+            if (this.sequences.get(index) != sequence) {
+                continue;
+            }
+            writer.write(format.format(new Date(time)));
+            writer.write(' ');
+            writer.write("??VDIWEA".charAt(priority & 7));
+            writer.write('/');
+            writer.write(String.valueOf(tag));
+            writer.write(" [");
+            writer.write(String.valueOf(thread));
+            writer.write("] ");
+            writer.write(this.render(message, args));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * 安装未捕获异常处理器, 崩溃时先把缓冲写入 file, 再交给原来的处理器
+     */
+    public void installCrashHandler(final File file) {
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                PrintWriter writer = null;
+                try {
+                    File parent = file.getParentFile();
+                    if (parent != null && !parent.exists()) {
+                        parent.mkdirs();
+                    }
+                    writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                    LogRing.this.dump(writer);
+                    writer.write("FATAL EXCEPTION: " + thread.getName() + "\n");
+                    throwable.printStackTrace(writer);
+                } catch (Throwable ignored) {
+                    // 崩溃现场尽力而为
+                } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+
+                if (previous != null) {
+                    previous.uncaughtException(thread, throwable);
+                }
+            }
+        });
+    }
+
+    private void copyArg(int slot, Object arg) {
+        byte type;
+        long primitive = 0;
+        String string = null;
+        if (arg == null) {
+            type = TYPE_NULL;
+        } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            type = TYPE_INT;
+            primitive = ((Number) arg).intValue();
+        } else if (arg instanceof Long) {
+            type = TYPE_LONG;
+            primitive = (Long) arg;
+        } else if (arg instanceof Float) {
+            type = TYPE_FLOAT;
+            primitive = Float.floatToRawIntBits((Float) arg);
+        } else if (arg instanceof Double) {
+            type = TYPE_DOUBLE;
+            primitive = Double.doubleToRawLongBits((Double) arg);
+        } else if (arg instanceof Boolean) {
+            type = TYPE_BOOLEAN;
+            primitive = (Boolean) arg ? 1 : 0;
+        } else if (arg instanceof Character) {
+            type = TYPE_CHAR;
+            primitive = (Character) arg;
+        } else {
+            type = TYPE_STRING;
+            try {
+                string = arg instanceof String ? (String) arg : String.valueOf(arg);
+            } catch (RuntimeException e) {
+                string = "<" + arg.getClass().getName() + ">";
+            }
+        }
+        this.argTypes[slot] = type;
+        this.argPrimitives[slot] = primitive;
+        this.argStrings[slot] = string;
+    }
+
+    private Object[] args(int index) {
+        int count = Math.min(this.argCounts[index], MAX_ARGS);
+        if (count == 0) {
+            return null;
+        }
+        Object[] args = new Object[count];
+        int base = index * MAX_ARGS;
+        for (int i = 0; i < count; i++) {
+            long primitive = this.argPrimitives[base + i];
+            switch (this.argTypes[base + i]) {
+                case TYPE_INT:
+                    args[i] = (int) primitive;
+                    break;
+                case TYPE_LONG:
+                    args[i] = primitive;
+                    break;
+                case TYPE_FLOAT:
+                    args[i] = Float.intBitsToFloat((int) primitive);
+                    break;
+                case TYPE_DOUBLE:
+                    args[i] = Double.longBitsToDouble(primitive);
+                    break;
+                case TYPE_BOOLEAN:
+                    args[i] = primitive != 0;
+                    break;
+                case TYPE_CHAR:
+                    args[i] = (char) primitive;
+                    break;
+                case TYPE_STRING:
+                    args[i] = this.argStrings[base + i];
+                    break;
+                default:
+                    args[i] = null;
+            }
+        }
+        return args;
+    }
+
+    private String render(String message, Object[] args) {
+        if (message == null || args == null || args.length == 0) {
+            return String.valueOf(message);
+        }
+        try {
+            return String.format(message, args);
+        } catch (RuntimeException e) {
+            return message;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.racofix.basic.logger;
 
+import java.io.File;
+
 public class Logger {
     
     private static final String DEFAULT_TAG = "EXLOGCAT";
@@ -62,6 +64,20 @@ public class Logger {
         printer.wtf(message, args);
     }
 
+    /**
+     * 结构化日志, priority 与 android.util.Log 的级别一致
+     */
+    public static LogEvent at(int priority) {
+        return LogEvent.obtain(printer, priority);
+    }
+
+    /**
+     * 崩溃时把最近的日志写入 file, 即使 LogLevel.NONE 也会记录
+     */
+    public static void installCrashDump(File file) {
+        printer.getSettings().getLogRing().installCrashHandler(file);
+    }
+
     public static void json(String json) {
         printer.json(json);
     }
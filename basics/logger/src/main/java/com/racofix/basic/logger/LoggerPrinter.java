@@ -2,19 +2,6 @@ package com.racofix.basic.logger;
 
 import android.text.TextUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.StringReader;
-import java.io.StringWriter;
-
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-
 public class LoggerPrinter implements Printer {
     private static final int DEBUG = 3;
     private static final int ERROR = 6;
@@ -24,6 +11,7 @@ public class LoggerPrinter implements Printer {
     private static final int WARN = 5;
     private static final int CHUNK_SIZE = 4000;
     private static final int JSON_INDENT = 4;
+    private static final int XML_INDENT = 2;
     private static final int MIN_STACK_OFFSET = 3;
     private static final char TOP_LEFT_CORNER = '╔';
     private static final char BOTTOM_LEFT_CORNER = '╚';
@@ -38,6 +26,22 @@ public class LoggerPrinter implements Printer {
     private final ThreadLocal<String> localTag = new ThreadLocal();
     private final ThreadLocal<Integer> localMethodCount = new ThreadLocal();
     private Settings settings;
+    private final JsonFormatter jsonFormatter = new JsonFormatter(JSON_INDENT);
+    private final XmlFormatter xmlFormatter = new XmlFormatter(XML_INDENT);
+    private final ContentSink contentSink = new ContentSink();
+    /**
+     * 限流器定时汇报被丢弃的条数
+     */
+    private final LogRateLimiter.Reporter suppressedReporter = new LogRateLimiter.Reporter() {
+        @Override
+        public void report(String tag, int suppressed) {
+            synchronized (LoggerPrinter.this) {
+                if (LoggerPrinter.this.settings != null) {
+                    LoggerPrinter.this.logSuppressed(WARN, tag, suppressed);
+                }
+            }
+        }
+    };
 
     LoggerPrinter() {
     }
@@ -68,7 +72,7 @@ public class LoggerPrinter implements Printer {
     }
 
     public void d(String message, Object... args) {
-        this.log(3, message, args);
+        this.log(3, message, message, args);
     }
 
     public void e(String message, Object... args) {
@@ -76,6 +80,7 @@ public class LoggerPrinter implements Printer {
     }
 
     public void e(Throwable throwable, String message, Object... args) {
+        String callSite = message;
         if (throwable != null && message != null) {
             message = message + " : " + throwable.toString();
         }
@@ -88,66 +93,48 @@ public class LoggerPrinter implements Printer {
             message = "No message/exception is set";
         }
 
-        this.log(6, message, args);
+        this.log(6, callSite, message, args);
     }
 
     public void w(String message, Object... args) {
-        this.log(5, message, args);
+        this.log(5, message, message, args);
     }
 
     public void i(String message, Object... args) {
-        this.log(4, message, args);
+        this.log(4, message, message, args);
     }
 
     public void v(String message, Object... args) {
-        this.log(2, message, args);
+        this.log(2, message, message, args);
     }
 
     public void wtf(String message, Object... args) {
-        this.log(7, message, args);
+        this.log(7, message, message, args);
     }
 
-    public void json(String json) {
+    public synchronized void json(String json) {
         if (TextUtils.isEmpty(json)) {
             this.d("Empty/Null json content", new Object[0]);
         } else {
-            try {
-                String message;
-                if (json.startsWith("{")) {
-                    JSONObject e1 = new JSONObject(json);
-                    message = e1.toString(4);
-                    this.d(message, new Object[0]);
-                    return;
-                }
-
-                if (json.startsWith("[")) {
-                    JSONArray e = new JSONArray(json);
-                    message = e.toString(4);
-                    this.d(message, new Object[0]);
-                }
-            } catch (JSONException var4) {
-                this.e(var4.getCause().getMessage() + "\n" + json, new Object[0]);
+            String content = json.trim();
+            if (content.startsWith("{") || content.startsWith("[")) {
+                this.logFormatted(3, this.jsonFormatter, content);
+            } else {
+                this.e("Invalid json content: Expected '{' or '[' at character 0\n" + json, new Object[0]);
             }
-
         }
     }
 
-    public void xml(String xml) {
+    public synchronized void xml(String xml) {
         if (TextUtils.isEmpty(xml)) {
             this.d("Empty/Null xml content", new Object[0]);
         } else {
-            try {
-                StreamSource e = new StreamSource(new StringReader(xml));
-                StreamResult xmlOutput = new StreamResult(new StringWriter());
-                Transformer transformer = TransformerFactory.newInstance().newTransformer();
-                transformer.setOutputProperty("indent", "yes");
-                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-                transformer.transform(e, xmlOutput);
-                this.d(xmlOutput.getWriter().toString().replaceFirst(">", ">\n"), new Object[0]);
-            } catch (TransformerException var5) {
-                this.e(var5.getCause().getMessage() + "\n" + xml, new Object[0]);
+            String content = xml.trim();
+            if (content.startsWith("<")) {
+                this.logFormatted(3, this.xmlFormatter, content);
+            } else {
+                this.e("Invalid xml content: Expected '<' at character 0\n" + xml, new Object[0]);
             }
-
         }
     }
 
@@ -155,34 +142,114 @@ public class LoggerPrinter implements Printer {
         this.settings = null;
     }
 
-    private synchronized void log(int logType, String msg, Object... args) {
+    private void log(int logType, Object callSite, String msg, Object... args) {
+        String tag = this.getTag();
+        this.settings.getLogRing().record(logType, tag, msg, args);
         if (this.settings.getLogLevel() != LogLevel.NONE) {
-            String tag = this.getTag();
+            int methodCount = this.getMethodCount();
+            int suppressed = this.acquire(tag, callSite);
+            if (suppressed == LogRateLimiter.DENIED) {
+                return;
+            }
+
             String message = this.createMessage(msg, args);
+            this.logBox(logType, tag, methodCount, suppressed, message);
+        }
+    }
+
+    public void log(LogEvent event) {
+        String tag = this.getTag();
+        if (event.tag() != null) {
+            tag = event.tag();
+        }
+        this.settings.getLogRing().record(event.priority(), tag, event.message(), null);
+        if (this.settings.getLogLevel() != LogLevel.NONE) {
             int methodCount = this.getMethodCount();
-            this.logTopBorder(logType, tag);
-            this.logHeaderContent(logType, tag, methodCount);
-            byte[] bytes = message.getBytes();
-            int length = bytes.length;
-            if (length <= 4000) {
-                if (methodCount > 0) {
-                    this.logDivider(logType, tag);
-                }
+            int suppressed = this.acquire(tag, event.message());
+            if (suppressed == LogRateLimiter.DENIED) {
+                return;
+            }
 
-                this.logContent(logType, tag, message);
-                this.logBottomBorder(logType, tag);
-            } else {
-                if (methodCount > 0) {
-                    this.logDivider(logType, tag);
+            String message = event.render();
+            LogTool logTool = this.settings.getLogTool();
+            if (logTool instanceof StructuredLogTool) {
+                synchronized (this) {
+                    this.logSuppressed(event.priority(), tag, suppressed);
+                    ((StructuredLogTool) logTool).log(event.priority(), this.formatTag(tag), message, event);
                 }
+            } else {
+                this.logBox(event.priority(), tag, methodCount, suppressed, message);
+            }
+        }
+    }
 
-                for (int i = 0; i < length; i += 4000) {
-                    int count = Math.min(length - i, 4000);
-                    this.logContent(logType, tag, new String(bytes, i, count));
-                }
+    private synchronized void logBox(int logType, String tag, int methodCount, int suppressed, String message) {
+        this.logSuppressed(logType, tag, suppressed);
+        this.logTopBorder(logType, tag);
+        this.logHeaderContent(logType, tag, methodCount);
+        byte[] bytes = message.getBytes();
+        int length = bytes.length;
+        if (length <= 4000) {
+            if (methodCount > 0) {
+                this.logDivider(logType, tag);
+            }
+
+            this.logContent(logType, tag, message);
+            this.logBottomBorder(logType, tag);
+        } else {
+            if (methodCount > 0) {
+                this.logDivider(logType, tag);
+            }
 
-                this.logBottomBorder(logType, tag);
+            for (int i = 0; i < length; i += 4000) {
+                int count = Math.min(length - i, 4000);
+                this.logContent(logType, tag, new String(bytes, i, count));
             }
+
+            this.logBottomBorder(logType, tag);
+        }
+    }
+
+    private void logFormatted(int logType, StreamFormatter formatter, String content) {
+        String tag = this.getTag();
+        this.settings.getLogRing().record(logType, tag, formatter == this.jsonFormatter ? "<json>" : "<xml>", null);
+        if (this.settings.getLogLevel() != LogLevel.NONE) {
+            int methodCount = this.getMethodCount();
+            int suppressed = this.acquire(tag, formatter);
+            if (suppressed == LogRateLimiter.DENIED) {
+                return;
+            }
+
+            this.logSuppressed(logType, tag, suppressed);
+            this.logTopBorder(logType, tag);
+            this.logHeaderContent(logType, tag, methodCount);
+            if (methodCount > 0) {
+                this.logDivider(logType, tag);
+            }
+
+            this.contentSink.logType = logType;
+            this.contentSink.tag = tag;
+            formatter.format(content, this.settings.getFormatMaxBytes(), this.contentSink);
+            String error = formatter.error();
+            if (error != null) {
+                this.logChunk(ERROR, tag, "║ Invalid " + (formatter == this.jsonFormatter ? "json" : "xml") + " content: " + error);
+            }
+            this.logBottomBorder(logType, tag);
+        }
+    }
+
+    private int acquire(String tag, Object callSite) {
+        LogRateLimiter limiter = this.settings.getRateLimiter();
+        if (limiter == null) {
+            return 0;
+        }
+        limiter.setReporter(this.suppressedReporter);
+        return limiter.acquire(tag, callSite);
+    }
+
+    private void logSuppressed(int logType, String tag, int suppressed) {
+        if (suppressed > 0) {
+            this.logChunk(logType, tag, suppressed + " messages suppressed");
         }
     }
 
@@ -302,7 +369,8 @@ public class LoggerPrinter implements Printer {
         for (int i = 3; i < trace.length; ++i) {
             StackTraceElement e = trace[i];
             String name = e.getClassName();
-            if (!name.equals(LoggerPrinter.class.getName()) && !name.equals(Logger.class.getName())) {
+            if (!name.equals(LoggerPrinter.class.getName()) && !name.equals(Logger.class.getName())
+                    && !name.equals(LogEvent.class.getName())) {
                 --i;
                 return i;
             }
@@ -310,4 +378,14 @@ public class LoggerPrinter implements Printer {
 
         return -1;
     }
+
+    private final class ContentSink implements StreamFormatter.LineSink {
+        int logType;
+        String tag;
+
+        @Override
+        public void onLine(CharSequence line) {
+            LoggerPrinter.this.logChunk(this.logType, this.tag, "║ " + line);
+        }
+    }
 }
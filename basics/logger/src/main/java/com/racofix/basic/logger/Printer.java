@@ -26,5 +26,7 @@ public interface Printer {
 
     void xml(String var1);
 
+    void log(LogEvent var1);
+
     void clear();
 }
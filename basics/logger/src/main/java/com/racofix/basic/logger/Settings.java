@@ -8,6 +8,10 @@ public final class Settings {
     private LogTool logTool;
     private LogLevel logLevel;
     private boolean DEBUG = true;
+    private int formatMaxBytes = 256 * 1024;
+    private LogRateLimiter rateLimiter;
+    private int logRingCapacity = 256;
+    private LogRing logRing;
 
     public Settings() {
         this.logLevel = LogLevel.FULL;
@@ -42,6 +46,30 @@ public final class Settings {
         return this;
     }
 
+    /**
+     * json/xml 格式化输出的最大字节数, 超出部分截断; 小于等于0表示不限制
+     */
+    public Settings formatMaxBytes(int maxBytes) {
+        this.formatMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * 高频调用点的限流/采样, 为null时不限流
+     */
+    public Settings rateLimiter(LogRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * 崩溃环形缓冲保留的日志条数, 需要在第一次记录日志前设置
+     */
+    public Settings logRingCapacity(int capacity) {
+        this.logRingCapacity = capacity;
+        return this;
+    }
+
     public Settings logTool(LogTool logTool) {
         this.logTool = logTool;
         return this;
@@ -63,6 +91,26 @@ public final class Settings {
         return this.methodOffset;
     }
 
+    public int getFormatMaxBytes() {
+        return this.formatMaxBytes;
+    }
+
+    public LogRateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    public LogRing getLogRing() {
+        if (this.logRing == null) {
+            synchronized (this) {
+                if (this.logRing == null) {
+                    this.logRing = new LogRing(this.logRingCapacity);
+                }
+            }
+        }
+
+        return this.logRing;
+    }
+
     public LogTool getLogTool() {
         if (this.logTool == null) {
             this.logTool = new AndroidLogTool();
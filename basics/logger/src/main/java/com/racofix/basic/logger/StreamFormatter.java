@@ -0,0 +1,148 @@
+package com.racofix.basic.logger;
+
+/**
+ * 单遍扫描的格式化器基类, 不构建 DOM, 每生成一行立即交给 {@link LineSink}.
+ * 实例持有可复用的行缓冲, 非线程安全, 由 {@link LoggerPrinter} 在同步块内复用.
+ */
+abstract class StreamFormatter {
+
+    interface LineSink {
+        void onLine(CharSequence line);
+    }
+
+    /**
+     * logcat 单条上限按 UTF-8 字节计算, 预留 "║ " 前缀的 4 字节
+     */
+    private static final int MAX_LINE_BYTES = 4000 - 4;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private final int indentWidth;
+    private LineSink sink;
+    private int depth;
+    private int lineBytes;
+    private String error;
+
+    StreamFormatter(int indentWidth) {
+        this.indentWidth = indentWidth;
+    }
+
+    final void format(String input, int maxBytes, LineSink sink) {
+        this.sink = sink;
+        this.depth = 0;
+        this.line.setLength(0);
+        this.lineBytes = 0;
+        this.error = null;
+
+        int end = truncateIndex(input, maxBytes);
+        try {
+            doFormat(input, end);
+            flushLine();
+            if (end < input.length()) {
+                sink.onLine("... truncated, " + end + "/" + input.length() + " chars shown");
+            }
+        } finally {
+            this.sink = null;
+        }
+    }
+
+    abstract void doFormat(String input, int end);
+
+    /**
+     * 最近一次 {@link #format} 发现的第一个语法错误, 没有错误时为 null
+     */
+    final String error() {
+        return error;
+    }
+
+    final void error(String message, int index) {
+        if (error == null) {
+            error = message + " at character " + index;
+        }
+    }
+
+    final void append(char c) {
+        int width = utf8Width(c);
+        if (lineBytes + width > MAX_LINE_BYTES) {
+            int last = line.length() - 1;
+            if (Character.isLowSurrogate(c) && last >= 0 && Character.isHighSurrogate(line.charAt(last))) {
+                char high = line.charAt(last);
+                line.setLength(last);
+                flushLine();
+                line.append(high);
+                lineBytes = utf8Width(high);
+            } else {
+                flushLine();
+            }
+        }
+        line.append(c);
+        lineBytes += width;
+    }
+
+    final void append(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            append(s.charAt(i));
+        }
+    }
+
+    final void newLine() {
+        flushLine();
+        for (int i = 0, n = depth * indentWidth; i < n; i++) {
+            line.append(' ');
+        }
+        lineBytes = line.length();
+    }
+
+    final void indent() {
+        depth++;
+    }
+
+    final void unindent() {
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    private void flushLine() {
+        int length = line.length();
+        int start = 0;
+        while (start < length && line.charAt(start) == ' ') {
+            start++;
+        }
+        if (start < length) {
+            sink.onLine(line);
+        }
+        line.setLength(0);
+        lineBytes = 0;
+    }
+
+    /**
+     * 代理对的两个 char 各计 2 字节, 合计为 4 字节的 UTF-8 编码
+     */
+    private static int utf8Width(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * 按 UTF-8 编码长度计算截断位置, 不分配临时 byte[]
+     */
+    static int truncateIndex(String input, int maxBytes) {
+        int length = input.length();
+        if (maxBytes <= 0 || length <= maxBytes / 3) {
+            return length;
+        }
+        long bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            bytes += utf8Width(c);
+            if (bytes > maxBytes) {
+                return Character.isLowSurrogate(c) && i > 0 ? i - 1 : i;
+            }
+        }
+        return length;
+    }
+}
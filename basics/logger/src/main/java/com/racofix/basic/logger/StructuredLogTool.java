@@ -0,0 +1,9 @@
+package com.racofix.basic.logger;
+
+/**
+ * 可以接收结构化字段的 LogTool, {@link LogEvent} 只在回调期间有效
+ */
+public interface StructuredLogTool extends LogTool {
+
+    void log(int priority, String tag, String message, LogEvent event);
+}
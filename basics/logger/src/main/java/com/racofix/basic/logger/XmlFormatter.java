@@ -0,0 +1,136 @@
+package com.racofix.basic.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐个标签缩进 XML, 不使用 Transformer, 也不构建 DOM. 只检查标签配对和闭合,
+ * 第一个错误通过 {@link #error()} 返回, 格式化仍尽力完成
+ */
+final class XmlFormatter extends StreamFormatter {
+
+    /**
+     * 尚未闭合的元素名, 可复用
+     */
+    private final List<String> open = new ArrayList<>();
+
+    XmlFormatter(int indentWidth) {
+        super(indentWidth);
+    }
+
+    @Override
+    void doFormat(String input, int end) {
+        boolean inlineClose = false;
+        open.clear();
+        int i = 0;
+        while (i < end) {
+            if (input.charAt(i) != '<') {
+                int next = input.indexOf('<', i);
+                if (next < 0 || next > end) {
+                    next = end;
+                }
+                int start = i;
+                int stop = next;
+                while (start < stop && Character.isWhitespace(input.charAt(start))) {
+                    start++;
+                }
+                while (stop > start && Character.isWhitespace(input.charAt(stop - 1))) {
+                    stop--;
+                }
+                if (start < stop) {
+                    if (!inlineClose) {
+                        newLine();
+                    }
+                    append(input, start, stop);
+                }
+                i = next;
+                continue;
+            }
+
+            int close = tokenEnd(input, i, end);
+            if (input.charAt(close - 1) != '>' || close - i < 2) {
+                if (close == input.length()) {
+                    error("Unterminated tag", i);
+                }
+            } else if (input.startsWith("</", i)) {
+                String name = name(input, i + 2, close);
+                int last = open.size() - 1;
+                if (last < 0 || !open.get(last).equals(name)) {
+                    error(last < 0 ? "Unexpected </" + name + ">" : "Expected </" + open.get(last) + ">", i);
+                } else {
+                    open.remove(last);
+                }
+            } else if (!input.startsWith("<?", i) && !input.startsWith("<!", i)
+                    && input.charAt(close - 2) != '/') {
+                open.add(name(input, i + 1, close));
+            }
+
+            if (input.startsWith("</", i)) {
+                unindent();
+                if (!inlineClose) {
+                    newLine();
+                }
+                append(input, i, close);
+                inlineClose = false;
+            } else if (input.startsWith("<?", i) || input.startsWith("<!", i)
+                    || (close - i >= 2 && input.charAt(close - 2) == '/')) {
+                newLine();
+                append(input, i, close);
+                inlineClose = false;
+            } else {
+                newLine();
+                append(input, i, close);
+                indent();
+                inlineClose = true;
+            }
+            i = close;
+        }
+
+        if (end == input.length() && !open.isEmpty()) {
+            error("Unterminated element <" + open.get(open.size() - 1) + ">", end);
+        }
+    }
+
+    private static String name(String input, int start, int end) {
+        int stop = start;
+        while (stop < end) {
+            char c = input.charAt(stop);
+            if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                break;
+            }
+            stop++;
+        }
+        return input.substring(start, stop);
+    }
+
+    private static int tokenEnd(String input, int start, int end) {
+        int close;
+        if (input.startsWith("<!--", start)) {
+            close = endOf(input, "-->", start, end);
+        } else if (input.startsWith("<![CDATA[", start)) {
+            close = endOf(input, "]]>", start, end);
+        } else {
+            close = end;
+            char quote = 0;
+            for (int i = start + 1; i < end; i++) {
+                char c = input.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    close = i + 1;
+                    break;
+                }
+            }
+        }
+        return close;
+    }
+
+    private static int endOf(String input, String terminator, int start, int end) {
+        int index = input.indexOf(terminator, start);
+        return index < 0 || index + terminator.length() > end ? end : index + terminator.length();
+    }
+}
@@ -0,0 +1,104 @@
+package com.racofix.basic.logger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogRateLimiterTest {
+
+    private static final String TAG = "tag";
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void callSite_burstThenDenied() {
+        LogRateLimiter limiter = new LogRateLimiter.Builder().callSiteRate(1, 2).build();
+        Object site = new Object();
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.acquire(TAG, site, now));
+        assertEquals(0, limiter.acquire(TAG, site, now));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, now));
+        assertEquals(0, limiter.acquire(TAG, new Object(), now));
+    }
+
+    @Test
+    public void suppressed_reportedAfterSummaryInterval() {
+        LogRateLimiter limiter = new LogRateLimiter.Builder()
+                .callSiteRate(1, 1)
+                .summaryIntervalMillis(1000)
+                .build();
+        Object site = new Object();
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.acquire(TAG, site, now));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, now));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, now));
+        assertEquals(2, limiter.acquire(TAG, site, now + 2 * SECOND));
+        assertEquals(0, limiter.acquire(TAG, site, now + 4 * SECOND));
+    }
+
+    @Test
+    public void suppressed_reportedWithoutFurtherLogs() {
+        LogRateLimiter limiter = new LogRateLimiter.Builder()
+                .callSiteRate(1, 1)
+                .summaryIntervalMillis(1000)
+                .build();
+        final List<String> reports = new ArrayList<>();
+        limiter.setReporter(new LogRateLimiter.Reporter() {
+            @Override
+            public void report(String tag, int suppressed) {
+                reports.add(tag + ":" + suppressed);
+            }
+        });
+        Object site = new Object();
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.acquire(TAG, site, now));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, now));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, now));
+        limiter.reportSuppressed(now + 2 * SECOND);
+
+        assertEquals(1, reports.size());
+        assertEquals(TAG + ":2", reports.get(0));
+        assertEquals(0, limiter.acquire(TAG, site, now + 4 * SECOND));
+    }
+
+    @Test
+    public void tableFull_fallsBackToTagBucket() {
+        LogRateLimiter limiter = new LogRateLimiter.Builder()
+                .capacity(8)
+                .callSiteRate(1, 1)
+                .build();
+        long now = System.nanoTime();
+
+        int passed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (limiter.acquire(TAG, "dynamic " + i, now) != LogRateLimiter.DENIED) {
+                passed++;
+            }
+        }
+        assertTrue("passed " + passed, passed <= 9);
+    }
+
+    @Test
+    public void idleBucket_replaced() {
+        LogRateLimiter limiter = new LogRateLimiter.Builder()
+                .capacity(8)
+                .callSiteRate(1, 1)
+                .build();
+        long now = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(TAG, "dynamic " + i, now);
+        }
+
+        long later = now + 61 * SECOND;
+        Object site = new Object();
+        assertEquals(0, limiter.acquire(TAG, site, later));
+        assertEquals(LogRateLimiter.DENIED, limiter.acquire(TAG, site, later));
+        assertEquals(0, limiter.acquire(TAG, new Object(), later));
+    }
+}
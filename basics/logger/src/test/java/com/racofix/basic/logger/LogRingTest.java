@@ -0,0 +1,107 @@
+package com.racofix.basic.logger;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LogRingTest {
+
+    @Test
+    public void capacity_roundedUpToPowerOfTwo() {
+        assertEquals(8, new LogRing(5).capacity());
+        assertEquals(2, new LogRing(0).capacity());
+    }
+
+    @Test
+    public void dump_keepsLatestAfterWrapAround() throws IOException {
+        LogRing ring = new LogRing(4);
+        for (int i = 0; i < 10; i++) {
+            ring.record(3, "T", "message %d", new Object[]{i});
+        }
+
+        List<String> lines = lines(ring);
+        assertEquals(4, lines.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(lines.get(i), lines.get(i).endsWith("message " + (6 + i)));
+        }
+    }
+
+    @Test
+    public void record_copiesArguments() throws IOException {
+        LogRing ring = new LogRing(4);
+        StringBuilder mutable = new StringBuilder("before");
+        Object[] args = {mutable, 7L, 1.5f, true, 'c', null};
+        ring.record(4, "T", "%s %d %.1f %b %c %s", args);
+        mutable.append(" after");
+        args[1] = 8L;
+
+        List<String> lines = lines(ring);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("I/T [" + Thread.currentThread().getName()
+                + "] before 7 1.5 true c null"));
+    }
+
+    @Test
+    public void record_failingToStringUsesTypeName() throws IOException {
+        LogRing ring = new LogRing(2);
+        ring.record(3, "T", "%s", new Object[]{new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException();
+            }
+        }});
+
+        assertTrue(lines(ring).get(0).endsWith("<" + LogRingTest.class.getName() + "$1>"));
+    }
+
+    @Test
+    public void dump_concurrentWritersNeverTear() throws Exception {
+        final LogRing ring = new LogRing(4);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final String tag = "W" + t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long i = 0;
+                    while (running.get()) {
+                        ring.record(3, tag, tag + " %d", new Object[]{i++});
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        try {
+            for (int round = 0; round < 200; round++) {
+                for (String line : lines(ring)) {
+                    String tag = line.substring(line.indexOf("D/") + 2, line.indexOf(" ["));
+                    assertTrue(line, line.substring(line.indexOf("] ") + 2).startsWith(tag + " "));
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    private static List<String> lines(LogRing ring) throws IOException {
+        StringWriter writer = new StringWriter();
+        ring.dump(writer);
+        List<String> lines = new ArrayList<>();
+        for (String line : writer.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
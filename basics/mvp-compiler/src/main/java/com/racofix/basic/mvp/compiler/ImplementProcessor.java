@@ -0,0 +1,225 @@
+package com.racofix.basic.mvp.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期收集 @Implement, 生成 LogicIndex 实现类, 用直接构造代替 LogicProviders 中的反射.
+ * <p>
+ * 生成的类名通过处理器参数 logicIndex 指定, 如 com.example.AppLogicIndex.
+ */
+@SupportedAnnotationTypes(ImplementProcessor.IMPLEMENT)
+@SupportedOptions(ImplementProcessor.OPTION_LOGIC_INDEX)
+public class ImplementProcessor extends AbstractProcessor {
+
+    static final String IMPLEMENT = "com.racofix.basic.mvp.annotation.Implement";
+    static final String OPTION_LOGIC_INDEX = "logicIndex";
+
+    private static final String LOGIC_I = "com.racofix.basic.mvp.LogicI";
+    private static final String DEFAULT_INDEX_NAME = "GeneratedLogicIndex";
+    private static final String DEFAULT_MODE = "EAGER";
+
+    /**
+     * 页面类的二进制名 -> Logic 实现类的规范名
+     */
+    private final Map<String, String> mLogics = new LinkedHashMap<>();
+    /**
+     * 页面类的二进制名 -> Implement.Mode 常量名
+     */
+    private final Map<String, String> mModes = new LinkedHashMap<>();
+    private String mFirstPackage;
+    private boolean mWritten;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = this.processingEnv.getElementUtils();
+        TypeElement implement = elements.getTypeElement(IMPLEMENT);
+        if (implement == null || annotations.isEmpty()) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(implement)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement target = (TypeElement) element;
+            TypeElement logic = this.readValue(target, implement);
+            if (logic != null && this.checkLogic(target, logic)) {
+                String name = elements.getBinaryName(target).toString();
+                this.mLogics.put(name, logic.getQualifiedName().toString());
+                this.mModes.put(name, this.readMode(target, implement));
+                if (this.mFirstPackage == null) {
+                    this.mFirstPackage = elements.getPackageOf(target).getQualifiedName().toString();
+                }
+            }
+        }
+
+        if (this.mWritten) {
+            this.error(null, "@Implement found in generated sources after LogicIndex was written");
+        } else if (!this.mLogics.isEmpty()) {
+            this.writeIndex();
+            this.mWritten = true;
+        }
+        return true;
+    }
+
+    private TypeElement readValue(TypeElement target, TypeElement implement) {
+        for (AnnotationMirror mirror : target.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(implement)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if ("value".contentEquals(entry.getKey().getSimpleName())) {
+                    Object value = entry.getValue().getValue();
+                    if (value instanceof DeclaredType) {
+                        return (TypeElement) ((DeclaredType) value).asElement();
+                    }
+                }
+            }
+        }
+        this.error(target, "Cannot read @Implement value of " + target.getQualifiedName());
+        return null;
+    }
+
+    private String readMode(TypeElement target, TypeElement implement) {
+        for (AnnotationMirror mirror : target.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(implement)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if ("mode".contentEquals(entry.getKey().getSimpleName())) {
+                    Object value = entry.getValue().getValue();
+                    if (value instanceof VariableElement) {
+                        return ((VariableElement) value).getSimpleName().toString();
+                    }
+                }
+            }
+        }
+        return DEFAULT_MODE;
+    }
+
+    /**
+     * 生成的代码直接 new 实现类, 需要 public 非抽象类和 public 无参构造方法
+     */
+    private boolean checkLogic(TypeElement target, TypeElement logic) {
+        Types types = this.processingEnv.getTypeUtils();
+        TypeElement logicI = this.processingEnv.getElementUtils().getTypeElement(LOGIC_I);
+        String name = logic.getQualifiedName().toString();
+        if (logicI != null && !types.isAssignable(logic.asType(), types.erasure(logicI.asType()))) {
+            this.error(target, name + " does not implement " + LOGIC_I);
+            return false;
+        }
+        if (!logic.getModifiers().contains(Modifier.PUBLIC) || logic.getModifiers().contains(Modifier.ABSTRACT)) {
+            this.error(target, name + " must be a public non-abstract class");
+            return false;
+        }
+        if (logic.getNestingKind().isNested() && !logic.getModifiers().contains(Modifier.STATIC)) {
+            this.error(target, name + " must be a static nested class");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(logic.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        this.error(target, name + " must have a public no-arg constructor");
+        return false;
+    }
+
+    private void writeIndex() {
+        String indexName = this.processingEnv.getOptions().get(OPTION_LOGIC_INDEX);
+        if (indexName == null) {
+            indexName = this.mFirstPackage + "." + DEFAULT_INDEX_NAME;
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "No option " + OPTION_LOGIC_INDEX + " passed, generating " + indexName);
+        }
+        int dot = indexName.lastIndexOf('.');
+        String packageName = dot > 0 ? indexName.substring(0, dot) : null;
+        String simpleName = indexName.substring(dot + 1);
+
+        StringBuilder source = new StringBuilder();
+        if (packageName != null) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.racofix.basic.mvp.LogicI;\n")
+                .append("import com.racofix.basic.mvp.LogicIndex;\n")
+                .append("import com.racofix.basic.mvp.annotation.Implement;\n\n")
+                .append("/**\n * Generated by ImplementProcessor, do not edit.\n */\n")
+                .append("public final class ").append(simpleName).append(" implements LogicIndex {\n\n")
+                .append("    @Override\n")
+                .append("    public LogicI create(Class<?> target) {\n")
+                .append("        switch (target.getName()) {\n");
+        for (Map.Entry<String, String> entry : this.mLogics.entrySet()) {
+            source.append("            case \"").append(entry.getKey()).append("\":\n")
+                    .append("                return new ").append(entry.getValue()).append("();\n");
+        }
+        source.append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Implement.Mode mode(Class<?> target) {\n")
+                .append("        switch (target.getName()) {\n");
+        for (Map.Entry<String, String> entry : this.mModes.entrySet()) {
+            source.append("            case \"").append(entry.getKey()).append("\":\n")
+                    .append("                return Implement.Mode.").append(entry.getValue()).append(";\n");
+        }
+        source.append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+
+        Writer writer = null;
+        try {
+            JavaFileObject file = this.processingEnv.getFiler().createSourceFile(indexName);
+            writer = file.openWriter();
+            writer.write(source.toString());
+        } catch (IOException e) {
+            this.error(null, "Could not write " + indexName + ": " + e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = this.processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -5,48 +5,52 @@ import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.FragmentActivity;
 
-import java.lang.ref.WeakReference;
-
 public class BaseActivity<T extends LogicI> extends FragmentActivity implements LogicI.Vo {
 
-    private WeakReference<T> mLogicWrf;
+    private LogicDelegate<T> mLogicDelegate;
 
+    /**
+     * LAZY 方式在第一次调用时创建, ASYNC 方式在创建完成前返回 null
+     */
     protected T getLogicImpl() {
-        return this.mLogicWrf.get();
-    }
-
-    private T providerLogic() {
-        return (T) LogicProviders.init(this.getClass());
+        return this.mLogicDelegate != null ? this.mLogicDelegate.get() : null;
     }
 
-    private boolean checkLogicNonNull() {
-        return this.mLogicWrf != null && this.mLogicWrf.get() != null;
+    /**
+     * Logic 已绑定到当前页面, ASYNC 方式可以在此之前显示占位状态
+     */
+    protected void onLogicReady(T logic) {
     }
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        if (providerLogic() == null) return;
-
+        this.mLogicDelegate = new LogicDelegate<>(this.getClass(), this.getLifecycle(), this,
+                new LogicDelegate.Callback<T>() {
+                    @Override
+                    public void onLogicReady(T logic) {
+                        BaseActivity.this.onLogicReady(logic);
+                    }
+                });
+        LogicStateStore.install(this, savedInstanceState == null);
         LogicViewModel<T> viewModel = ViewModelProviders.of(this).get(LogicViewModel.class);
-        if (viewModel.getLogicImpl() == null) {
-            viewModel.setLogicImpl(providerLogic());
-        }
+        this.mLogicDelegate.attach(viewModel, savedInstanceState);
+    }
 
-        this.mLogicWrf = new WeakReference<>(viewModel.getLogicImpl());
-        if (checkLogicNonNull()) {
-            getLogicImpl().bindLifecycle(this.getLifecycle());
-            getLogicImpl().bindVo(this);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (this.mLogicDelegate != null) {
+            this.mLogicDelegate.save(outState, this.getTaskId());
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (checkLogicNonNull()) {
-            getLogicImpl().unbindLifecycle(this.getLifecycle());
-            getLogicImpl().unbindVo();
+        if (this.mLogicDelegate != null) {
+            this.mLogicDelegate.detach();
         }
     }
 }
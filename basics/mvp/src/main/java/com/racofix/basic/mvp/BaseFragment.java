@@ -7,48 +7,52 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.view.View;
 
-import java.lang.ref.WeakReference;
-
 public class BaseFragment<T extends LogicI> extends Fragment implements LogicI.Vo {
 
-    private WeakReference<T> mLogicWrf;
+    private LogicDelegate<T> mLogicDelegate;
 
+    /**
+     * LAZY 方式在第一次调用时创建, ASYNC 方式在创建完成前返回 null
+     */
     protected T getLogicImpl() {
-        return this.mLogicWrf.get();
-    }
-
-    private T providerLogic() {
-        return (T) LogicProviders.init(this.getClass());
+        return this.mLogicDelegate != null ? this.mLogicDelegate.get() : null;
     }
 
-    private boolean checkLogicNonNull() {
-        return this.mLogicWrf != null && this.mLogicWrf.get() != null;
+    /**
+     * Logic 已绑定到当前页面, ASYNC 方式可以在此之前显示占位状态
+     */
+    protected void onLogicReady(T logic) {
     }
 
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        if (providerLogic() == null) return;
-
+        this.mLogicDelegate = new LogicDelegate<>(this.getClass(), this.getLifecycle(), this,
+                new LogicDelegate.Callback<T>() {
+                    @Override
+                    public void onLogicReady(T logic) {
+                        BaseFragment.this.onLogicReady(logic);
+                    }
+                });
+        LogicStateStore.install(this.getActivity(), false);
         LogicViewModel<T> viewModel = ViewModelProviders.of(this).get(LogicViewModel.class);
-        if (viewModel.getLogicImpl() == null) {
-            viewModel.setLogicImpl(providerLogic());
-        }
+        this.mLogicDelegate.attach(viewModel, savedInstanceState);
+    }
 
-        this.mLogicWrf = new WeakReference<>(viewModel.getLogicImpl());
-        if (checkLogicNonNull()) {
-            getLogicImpl().bindLifecycle(this.getLifecycle());
-            getLogicImpl().bindVo(this);
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (this.mLogicDelegate != null) {
+            this.mLogicDelegate.save(outState, this.getActivity().getTaskId());
         }
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (checkLogicNonNull()) {
-            getLogicImpl().unbindLifecycle(this.getLifecycle());
-            getLogicImpl().unbindVo();
+        if (this.mLogicDelegate != null) {
+            this.mLogicDelegate.detach();
         }
     }
 }
@@ -0,0 +1,173 @@
+package com.racofix.basic.mvp;
+
+import android.arch.lifecycle.Lifecycle;
+import android.os.Bundle;
+
+import com.racofix.basic.mvp.annotation.Implement;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * BaseActivity/BaseFragment 共用的 Logic 创建与绑定, 按 {@link Implement#mode()} 决定创建时机
+ */
+final class LogicDelegate<T extends LogicI> {
+
+    interface Callback<T> {
+        void onLogicReady(T logic);
+    }
+
+    private final Class<?> mScreen;
+    private final Lifecycle mLifecycle;
+    private final LogicI.Vo mVo;
+    private final Callback<T> mCallback;
+
+    private LogicViewModel<T> mViewModel;
+    private WeakReference<T> mLogicWrf;
+    private Implement.Mode mMode;
+    private boolean mAttached;
+    private Bundle mSavedState;
+
+    LogicDelegate(Class<?> screen, Lifecycle lifecycle, LogicI.Vo vo, Callback<T> callback) {
+        this.mScreen = screen;
+        this.mLifecycle = lifecycle;
+        this.mVo = vo;
+        this.mCallback = callback;
+    }
+
+    void attach(LogicViewModel<T> viewModel, Bundle savedState) {
+        this.mViewModel = viewModel;
+        this.mSavedState = savedState;
+        this.mAttached = true;
+        if (viewModel.getLogicImpl() != null) {
+            this.bind();
+            return;
+        }
+        if (viewModel.isCreating()) {
+            viewModel.await(this);
+            return;
+        }
+
+        this.mMode = LogicProviders.mode(this.mScreen);
+        if (this.mMode == null) return;
+        switch (this.mMode) {
+            case LAZY:
+                break;
+            case ASYNC:
+                this.createAsync();
+                break;
+            default:
+                //预加载还在进行时不在主线程等待, 改为后台接管
+                if (LogicProviders.isPreloading(this.mScreen)) {
+                    this.createAsync();
+                } else {
+                    this.create();
+                }
+                break;
+        }
+    }
+
+    T get() {
+        if (this.mLogicWrf == null && this.mMode == Implement.Mode.LAZY && this.mAttached) {
+            this.mMode = null;
+            this.create();
+        }
+        return this.mLogicWrf != null ? this.mLogicWrf.get() : null;
+    }
+
+    /**
+     * 在主线程创建, 只接管已完成的预加载; 未完成的预加载被取消, 不等待
+     */
+    private void create() {
+        T logic = (T) LogicProviders.takePreloaded(this.mScreen, false);
+        if (logic == null) {
+            LogicProviders.cancelPreload(this.mScreen);
+        }
+        if (logic != null) {
+            restore(logic, this.mSavedState);
+            if (!this.mViewModel.adoptLogicImpl(logic)) {
+                logic.onLogicDestroy();
+            }
+        } else {
+            logic = (T) LogicProviders.init(this.mScreen);
+            if (logic == null) return;
+            restore(logic, this.mSavedState);
+            this.mViewModel.setLogicImpl(logic);
+        }
+        this.bind();
+    }
+
+    /**
+     * onLogicCreated 也在后台执行, 只持有 ViewModel, 页面重建不会中断创建
+     */
+    private void createAsync() {
+        final LogicViewModel<T> viewModel = this.mViewModel;
+        final Class<?> screen = this.mScreen;
+        final Bundle savedState = this.mSavedState;
+        viewModel.startCreating(this);
+        LogicExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                LogicI logic = LogicProviders.takePreloaded(screen, true);
+                if (logic != null) {
+                    restore(logic, savedState);
+                } else {
+                    logic = LogicProviders.init(screen);
+                    if (logic != null) {
+                        restore(logic, savedState);
+                        logic.onLogicCreated();
+                    }
+                }
+                final T created = (T) logic;
+                LogicExecutors.MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        viewModel.onCreated(created);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 新创建的 Logic 从进程回收前保存的状态恢复, ViewModel 中保留的 Logic 不需要
+     */
+    private static void restore(LogicI logic, Bundle savedState) {
+        if (savedState != null) {
+            logic.getStateStore().restore(savedState);
+        }
+    }
+
+    /**
+     * taskId 是页面所在任务的 id, 大数据文件随任务清理
+     */
+    void save(Bundle outState, int taskId) {
+        T logic = this.mViewModel != null ? this.mViewModel.getLogicImpl() : null;
+        if (logic != null) {
+            logic.getStateStore().saveTo(outState, taskId);
+        } else if (this.mSavedState != null) {
+            LogicStateStore.copy(this.mSavedState, outState);
+        }
+    }
+
+    void bind() {
+        T logic = this.mViewModel.getLogicImpl();
+        if (logic == null || !this.mAttached) return;
+        this.mLogicWrf = new WeakReference<>(logic);
+        logic.bindLifecycle(this.mLifecycle);
+        logic.bindVo(this.mVo);
+        this.mCallback.onLogicReady(logic);
+    }
+
+    void detach() {
+        this.mAttached = false;
+        if (this.mViewModel != null) {
+            this.mViewModel.stopWaiting(this);
+        }
+        T logic = this.mLogicWrf != null ? this.mLogicWrf.get() : null;
+        if (logic != null) {
+            logic.unbindLifecycle(this.mLifecycle);
+            logic.unbindVo();
+        }
+        this.mLogicWrf = null;
+    }
+}
@@ -7,6 +7,8 @@ public interface LogicI<V extends LogicI.Vo> {
 
     Bundle getStateBundle();
 
+    LogicStateStore getStateStore();
+
     void bindLifecycle(Lifecycle lifecycle);
 
     void unbindLifecycle(Lifecycle lifecycle);
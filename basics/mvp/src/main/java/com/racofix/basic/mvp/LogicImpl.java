@@ -5,16 +5,37 @@ import android.arch.lifecycle.LifecycleObserver;
 import android.os.Bundle;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class LogicImpl<V extends LogicI.Vo> implements LogicI<V>, LifecycleObserver {
 
-    private Bundle stateBundle;
+    private LogicStateStore stateStore;
     private WeakReference<V> wrf;
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+    private final List<ViewStateChannel<?>> channels = new CopyOnWriteArrayList<>();
+    private volatile boolean destroyed;
 
     @Override
     public Bundle getStateBundle() {
-        return stateBundle == null ?
-                stateBundle = new Bundle() : stateBundle;
+        return getStateStore().getBundle();
+    }
+
+    /**
+     * 小数据保存在 getStateBundle() 中, 大数据写入文件, 页面 onSaveInstanceState 时保存, 进程被回收后恢复
+     */
+    @Override
+    public LogicStateStore getStateStore() {
+        return stateStore == null ?
+                stateStore = new LogicStateStore(getClass().getName()) : stateStore;
     }
 
     @Override
@@ -30,6 +51,9 @@ public class LogicImpl<V extends LogicI.Vo> implements LogicI<V>, LifecycleObser
     @Override
     final public void bindVo(V vo) {
         this.wrf = new WeakReference<>(vo);
+        for (ViewStateChannel<?> channel : this.channels) {
+            channel.onVoBound();
+        }
     }
 
     @Override
@@ -48,14 +72,103 @@ public class LogicImpl<V extends LogicI.Vo> implements LogicI<V>, LifecycleObser
         return isVoBind() ? wrf.get() : null;
     }
 
+    /**
+     * 创建与当前 Logic 绑定的状态通道, Vo 需要实现 {@link StateVo}
+     */
+    protected final <S> ViewStateChannel<S> newStateChannel() {
+        ViewStateChannel<S> channel = new ViewStateChannel<>(this);
+        this.channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * 在共享的后台线程池执行, onLogicDestroy 时未完成的任务会被取消
+     */
+    protected final Future<?> execute(final Runnable runnable) {
+        return this.execute(new LogicTask<Void>() {
+            @Override
+            protected Void doInBackground() {
+                runnable.run();
+                return null;
+            }
+
+            @Override
+            protected void onResult(Void result) {
+            }
+        });
+    }
+
+    /**
+     * 后台执行 doInBackground, 结果在主线程回调; Vo 已解绑或 Logic 已销毁时丢弃结果
+     *
+     * @return Logic 已销毁时返回 null
+     */
+    protected final <R> Future<R> execute(final LogicTask<R> task) {
+        if (this.destroyed) {
+            return null;
+        }
+
+        FutureTask<R> future = new FutureTask<R>(new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                return task.doInBackground();
+            }
+        }) {
+            @Override
+            protected void done() {
+                tasks.remove(this);
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    deliver(this, task, get(), null);
+                } catch (ExecutionException e) {
+                    deliver(this, task, null, e.getCause());
+                } catch (InterruptedException | CancellationException ignored) {
+                }
+            }
+        };
+        this.tasks.add(future);
+        if (this.destroyed) {
+            future.cancel(true);
+            return null;
+        }
+        LogicExecutors.BACKGROUND.execute(future);
+        return future;
+    }
+
+    private <R> void deliver(final Future<R> future, final LogicTask<R> task, final R result, final Throwable error) {
+        LogicExecutors.MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                if (destroyed || future.isCancelled() || !isVoBind()) {
+                    return;
+                }
+                if (error != null) {
+                    task.onError(error);
+                } else {
+                    task.onResult(result);
+                }
+            }
+        });
+    }
+
     @Override
     public void onLogicCreated() {
     }
 
     @Override
     public void onLogicDestroy() {
-        if (stateBundle != null && !stateBundle.isEmpty()) {
-            stateBundle.clear();
+        this.destroyed = true;
+        for (Future<?> task : this.tasks) {
+            task.cancel(true);
+        }
+        this.tasks.clear();
+        for (ViewStateChannel<?> channel : this.channels) {
+            channel.clear();
+        }
+        if (stateStore != null) {
+            stateStore.clear();
         }
     }
 }
@@ -0,0 +1,19 @@
+package com.racofix.basic.mvp;
+
+import com.racofix.basic.mvp.annotation.Implement;
+
+/**
+ * 由 mvp-compiler 根据 @Implement 生成, 通过 {@link LogicProviders#installIndex(LogicIndex)} 注册
+ */
+public interface LogicIndex {
+
+    /**
+     * @return target 上 @Implement 指定的 Logic 实例, 未标注时返回 null
+     */
+    LogicI create(Class<?> target);
+
+    /**
+     * @return target 上 @Implement 指定的创建方式, 未标注时返回 null
+     */
+    Implement.Mode mode(Class<?> target);
+}
@@ -4,12 +4,43 @@ import android.util.Log;
 
 import com.racofix.basic.mvp.annotation.Implement;
 
-final class LogicProviders {
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public final class LogicProviders {
+
+    /**
+     * 预加载结果的有效期, 超过后未被页面取走的 Logic 会被销毁
+     */
+    private static final long PRELOAD_EXPIRE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final CopyOnWriteArrayList<LogicIndex> sIndexes = new CopyOnWriteArrayList<>();
+    private static final ConcurrentHashMap<Class<?>, Preload> sPreloads = new ConcurrentHashMap<>();
 
     private LogicProviders() {
     }
 
+    /**
+     * 注册编译期生成的索引, 建议在 Application.onCreate 中调用
+     */
+    public static void installIndex(LogicIndex index) {
+        sIndexes.addIfAbsent(index);
+    }
+
     public static LogicI init(Class<?> clazz) {
+        for (LogicIndex index : sIndexes) {
+            LogicI logic = index.create(clazz);
+            if (logic != null) {
+                return logic;
+            }
+        }
+
+        //没有注册索引或页面不在索引中时回退到反射
         try {
             Implement annotation = clazz.getAnnotation(Implement.class);
             if (annotation != null)
@@ -23,4 +54,135 @@ final class LogicProviders {
             return null;
         }
     }
+
+    static Implement.Mode mode(Class<?> clazz) {
+        for (LogicIndex index : sIndexes) {
+            Implement.Mode mode = index.mode(clazz);
+            if (mode != null) {
+                return mode;
+            }
+        }
+        Implement annotation = clazz.getAnnotation(Implement.class);
+        return annotation != null ? annotation.mode() : null;
+    }
+
+    /**
+     * 在后台线程提前创建 screen 的 Logic 并执行 onLogicCreated, screen 打开时直接接管, 用于多步流程中预加载下一个页面.
+     * 同一页面只保留一份, 60秒内未被使用会被销毁.
+     */
+    public static void preload(Class<?> screen) {
+        purgeExpired();
+        Preload preload = new Preload(screen);
+        if (sPreloads.putIfAbsent(screen, preload) == null) {
+            LogicExecutors.BACKGROUND.execute(preload);
+        }
+    }
+
+    public static void cancelPreload(Class<?> screen) {
+        Preload preload = sPreloads.remove(screen);
+        if (preload != null) {
+            preload.discard();
+        }
+    }
+
+    /**
+     * 预加载仍在后台创建中
+     */
+    static boolean isPreloading(Class<?> screen) {
+        Preload preload = sPreloads.get(screen);
+        return preload != null && !preload.isDone() && !preload.isExpired();
+    }
+
+    /**
+     * 取走预加载的 Logic, 返回的实例已执行过 onLogicCreated.
+     * 仍在创建中时, wait 为 true 则等待其完成(只能在后台线程), 否则保留预加载并返回 null
+     */
+    static LogicI takePreloaded(Class<?> screen, boolean wait) {
+        Preload preload = sPreloads.get(screen);
+        if (preload == null || (!wait && !preload.isDone() && !preload.isExpired())
+                || !sPreloads.remove(screen, preload)) {
+            return null;
+        }
+        if (preload.isExpired()) {
+            preload.discard();
+            return null;
+        }
+        try {
+            return preload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            preload.discard();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(LogicProviders.class.getSimpleName(), "Cannot preload logic of " + screen, e.getCause());
+            return null;
+        }
+    }
+
+    private static void purgeExpired() {
+        Iterator<Preload> iterator = sPreloads.values().iterator();
+        while (iterator.hasNext()) {
+            Preload preload = iterator.next();
+            if (preload.isExpired()) {
+                iterator.remove();
+                preload.discard();
+            }
+        }
+    }
+
+    private static final class Preload extends FutureTask<LogicI> {
+        private final long createdNanos = System.nanoTime();
+        private boolean discarded;
+
+        Preload(final Class<?> screen) {
+            super(new Callable<LogicI>() {
+                @Override
+                public LogicI call() {
+                    LogicI logic = init(screen);
+                    if (logic != null) {
+                        logic.onLogicCreated();
+                    }
+                    return logic;
+                }
+            });
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - this.createdNanos > PRELOAD_EXPIRE_NANOS;
+        }
+
+        @Override
+        protected void set(LogicI logic) {
+            synchronized (this) {
+                if (!this.discarded) {
+                    super.set(logic);
+                    return;
+                }
+            }
+            if (logic != null) {
+                logic.onLogicDestroy();
+            }
+        }
+
+        /**
+         * 已从 sPreloads 中移除的结果不会再被取走, 创建完成后立即销毁
+         */
+        void discard() {
+            synchronized (this) {
+                this.discarded = true;
+                if (!this.isDone()) {
+                    return;
+                }
+            }
+            try {
+                LogicI logic = this.get();
+                if (logic != null) {
+                    logic.onLogicDestroy();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+            }
+        }
+    }
 }
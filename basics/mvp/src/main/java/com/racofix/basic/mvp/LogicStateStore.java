@@ -0,0 +1,461 @@
+package com.racofix.basic.mvp;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Logic 的状态存储. 小数据保存在 {@link #getBundle()} 中随 onSaveInstanceState 保存,
+ * 不小于 {@link #SPILL_BYTES} 的数据写入以 Logic 标识命名的内存映射文件, 不受 Binder 事务大小限制.
+ * <p>
+ * 进程被回收后重建页面时只记录文件位置, 第一次读取时才映射文件. 文件读写之外的写入和删除都在后台线程执行.
+ * <p>
+ * 文件名以所属任务的 id 开头, Logic 销毁时删除文件; 任务结束后(API 21 以上不在 getAppTasks() 中,
+ * 或同一任务重新从根页面启动)页面不会再恢复, 下次启动时清理.
+ */
+public final class LogicStateStore {
+
+    public static final int SPILL_BYTES = 8 * 1024;
+
+    private static final String KEY_BUNDLE = "com.racofix.basic.mvp.state.BUNDLE";
+    private static final String KEY_ID = "com.racofix.basic.mvp.state.ID";
+    private static final String KEY_SPILLED = "com.racofix.basic.mvp.state.SPILLED";
+    private static final String DIRECTORY = "logic-state";
+    private static final String SUFFIX = ".state";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile Context sContext;
+    private static File sDirectory;
+
+    private final String name;
+    private Bundle bundle;
+    private String id;
+    /**
+     * 已写入或已从文件读取的大数据
+     */
+    private final Map<String, byte[]> spilled = new LinkedHashMap<>();
+    /**
+     * 文件中还没有读取的 key
+     */
+    private final Set<String> unread = new HashSet<>();
+    private Map<String, int[]> index;
+    private ByteBuffer mapped;
+    private boolean dirty;
+    /**
+     * 每次写入或清理加一, 后台只执行最新的一次
+     */
+    private volatile int generation;
+    private final Object fileLock = new Object();
+
+    LogicStateStore(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 启用文件存储并在后台清理已结束任务的文件, 未调用时大数据也保存在 Bundle 中
+     *
+     * @param fresh 页面没有保存的状态; 根页面是新创建的说明任务重新开始, 之前同一任务 id 的文件不会再被恢复
+     */
+    static void install(Activity activity, boolean fresh) {
+        final int restarted = fresh && activity.isTaskRoot() ? activity.getTaskId() : -1;
+        final boolean first;
+        synchronized (LogicStateStore.class) {
+            first = sContext == null;
+            if (first) {
+                sContext = activity.getApplicationContext();
+            }
+        }
+        if (!first && restarted == -1) {
+            return;
+        }
+        LogicExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                sweep(first ? liveTasks() : null, restarted);
+            }
+        });
+    }
+
+    private static void sweep(Set<Integer> liveTasks, int restarted) {
+        File directory = directory();
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            int task = taskOf(file.getName());
+            if (task == restarted || liveTasks != null && !liveTasks.contains(task)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * API 21 以下无法取得应用的任务列表, 返回 null
+     */
+    private static Set<Integer> liveTasks() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        try {
+            ActivityManager manager = (ActivityManager) sContext.getSystemService(Context.ACTIVITY_SERVICE);
+            Set<Integer> tasks = new HashSet<>();
+            for (ActivityManager.AppTask task : manager.getAppTasks()) {
+                tasks.add(task.getTaskInfo().persistentId);
+            }
+            return tasks;
+        } catch (RuntimeException e) {
+            //任务在遍历时结束会抛出 IllegalArgumentException, 本次不清理
+            return null;
+        }
+    }
+
+    private static int taskOf(String fileName) {
+        int end = fileName.indexOf('-');
+        try {
+            return end > 0 ? Integer.parseInt(fileName.substring(0, end)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 第一次使用时在调用线程创建目录, 由后台的清理或写入触发
+     */
+    private static File directory() {
+        synchronized (LogicStateStore.class) {
+            if (sDirectory == null && sContext != null) {
+                File directory = new File(sContext.getFilesDir(), DIRECTORY);
+                if (directory.isDirectory() || directory.mkdirs()) {
+                    sDirectory = directory;
+                } else {
+                    Log.e(LogicStateStore.class.getSimpleName(), "Cannot create " + directory);
+                }
+            }
+            return sDirectory;
+        }
+    }
+
+    public synchronized Bundle getBundle() {
+        return this.bundle == null ?
+                this.bundle = new Bundle() : this.bundle;
+    }
+
+    public synchronized void putBytes(String key, byte[] value) {
+        if (value == null) {
+            this.remove(key);
+            return;
+        }
+        if (value.length < SPILL_BYTES || sContext == null) {
+            this.removeSpilled(key);
+            this.getBundle().putByteArray(key, value);
+        } else {
+            this.getBundle().remove(key);
+            this.unread.remove(key);
+            this.spilled.put(key, value);
+            this.dirty = true;
+        }
+    }
+
+    public synchronized byte[] getBytes(String key) {
+        byte[] value = this.spilled.get(key);
+        if (value == null && this.unread.contains(key)) {
+            value = this.read(key);
+        }
+        return value != null ? value : this.getBundle().getByteArray(key);
+    }
+
+    /**
+     * 按 UTF-8 编码后的长度决定保存位置
+     */
+    public synchronized void putString(String key, String value) {
+        if (value == null) {
+            this.remove(key);
+            return;
+        }
+        if (value.length() * 3 < SPILL_BYTES || sContext == null) {
+            this.removeSpilled(key);
+            this.getBundle().putString(key, value);
+        } else {
+            this.putBytes(key, value.getBytes(UTF_8));
+        }
+    }
+
+    public synchronized String getString(String key) {
+        byte[] value = this.spilled.get(key);
+        if (value == null && this.unread.contains(key)) {
+            value = this.read(key);
+        }
+        return value != null ? new String(value, UTF_8) : this.getBundle().getString(key);
+    }
+
+    public synchronized void remove(String key) {
+        this.getBundle().remove(key);
+        this.removeSpilled(key);
+    }
+
+    private void removeSpilled(String key) {
+        if (this.spilled.remove(key) != null | this.unread.remove(key)) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * 在 onSaveInstanceState 中调用, 只有大数据变化时才在后台重写文件, 主线程只复制引用
+     */
+    synchronized void saveTo(Bundle outState, int taskId) {
+        outState.putBundle(KEY_BUNDLE, this.getBundle());
+        if (this.dirty) {
+            if (this.id == null) {
+                this.id = taskId + "-" + this.name + "-" + UUID.randomUUID();
+            }
+            this.dirty = false;
+            this.write(new LinkedHashMap<>(this.spilled), new HashSet<>(this.unread));
+        }
+        if (this.id != null && (!this.spilled.isEmpty() || !this.unread.isEmpty())) {
+            Set<String> keys = new HashSet<>(this.spilled.keySet());
+            keys.addAll(this.unread);
+            outState.putString(KEY_ID, this.id);
+            outState.putStringArray(KEY_SPILLED, keys.toArray(new String[keys.size()]));
+        }
+    }
+
+    /**
+     * 页面重建时调用, 只记录文件中的 key, 不读取文件
+     */
+    synchronized void restore(Bundle savedState) {
+        if (savedState == null) {
+            return;
+        }
+        Bundle saved = savedState.getBundle(KEY_BUNDLE);
+        if (saved != null) {
+            if (this.bundle != null) {
+                saved.putAll(this.bundle);
+            }
+            this.bundle = saved;
+        }
+        String savedId = savedState.getString(KEY_ID);
+        String[] keys = savedState.getStringArray(KEY_SPILLED);
+        if (savedId != null && keys != null && this.id == null) {
+            this.id = savedId;
+            this.unread.addAll(Arrays.asList(keys));
+            this.unread.removeAll(this.spilled.keySet());
+        }
+    }
+
+    /**
+     * 没有 Logic 的页面(LAZY/ASYNC 尚未创建)保存时原样传递上一次的状态
+     */
+    static void copy(Bundle savedState, Bundle outState) {
+        Bundle saved = savedState.getBundle(KEY_BUNDLE);
+        if (saved != null) {
+            outState.putBundle(KEY_BUNDLE, saved);
+        }
+        String savedId = savedState.getString(KEY_ID);
+        if (savedId != null) {
+            outState.putString(KEY_ID, savedId);
+            outState.putStringArray(KEY_SPILLED, savedState.getStringArray(KEY_SPILLED));
+        }
+    }
+
+    synchronized void clear() {
+        if (this.bundle != null && !this.bundle.isEmpty()) {
+            this.bundle.clear();
+        }
+        this.spilled.clear();
+        this.unread.clear();
+        this.index = null;
+        this.mapped = null;
+        this.dirty = false;
+        if (this.id == null) {
+            return;
+        }
+        final int generation = ++this.generation;
+        final String id = this.id;
+        LogicExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LogicStateStore.this.fileLock) {
+                    File file = file(id);
+                    if (file != null && generation == LogicStateStore.this.generation) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    private static File file(String id) {
+        File directory = directory();
+        return directory != null ? new File(directory, id + SUFFIX) : null;
+    }
+
+    private byte[] read(String key) {
+        this.unread.remove(key);
+        if (this.index == null && !this.map()) {
+            this.unread.clear();
+            return null;
+        }
+        int[] position = this.index.get(key);
+        byte[] value = null;
+        if (position != null) {
+            value = new byte[position[1]];
+            ByteBuffer buffer = this.mapped.duplicate();
+            buffer.position(position[0]);
+            buffer.get(value);
+            this.spilled.put(key, value);
+        }
+        if (this.unread.isEmpty()) {
+            this.index = null;
+            this.mapped = null;
+        }
+        return value;
+    }
+
+    private boolean map() {
+        File file = this.id != null ? file(this.id) : null;
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        try {
+            Map<String, int[]> index = new HashMap<>();
+            this.mapped = map(file, index);
+            this.index = index;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(LogicStateStore.class.getSimpleName(), "Cannot read " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 文件格式: [count]{[keyLength][key][valueLength][value]}
+     */
+    private static ByteBuffer map(File file, Map<String, int[]> index) throws IOException {
+        RandomAccessFile access = null;
+        try {
+            access = new RandomAccessFile(file, "r");
+            MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+            for (int count = buffer.getInt(); count > 0; count--) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                int length = buffer.getInt();
+                index.put(new String(key, UTF_8), new int[]{buffer.position(), length});
+                buffer.position(buffer.position() + length);
+            }
+            return buffer;
+        } finally {
+            close(access);
+        }
+    }
+
+    /**
+     * 在后台合并文件中未读取的数据后写入临时文件再替换, 替换前映射的旧文件仍可读取
+     */
+    private void write(final Map<String, byte[]> spilled, final Set<String> unread) {
+        final int generation = ++this.generation;
+        final String id = this.id;
+        LogicExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LogicStateStore.this.fileLock) {
+                    if (generation != LogicStateStore.this.generation) {
+                        return;
+                    }
+                    File file = file(id);
+                    if (file == null || !write(file, spilled, unread)) {
+                        synchronized (LogicStateStore.this) {
+                            if (generation == LogicStateStore.this.generation) {
+                                LogicStateStore.this.dirty = true;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean write(File file, Map<String, byte[]> spilled, Set<String> unread) {
+        Map<byte[], byte[]> entries = new LinkedHashMap<>();
+        long size = 4;
+        if (!unread.isEmpty()) {
+            try {
+                Map<String, int[]> index = new HashMap<>();
+                ByteBuffer mapped = map(file, index);
+                for (String key : unread) {
+                    int[] position = index.get(key);
+                    if (position != null) {
+                        byte[] value = new byte[position[1]];
+                        ByteBuffer buffer = mapped.duplicate();
+                        buffer.position(position[0]);
+                        buffer.get(value);
+                        spilled.put(key, value);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(LogicStateStore.class.getSimpleName(), "Cannot read " + file, e);
+            }
+        }
+        if (spilled.isEmpty()) {
+            file.delete();
+            return true;
+        }
+        for (Map.Entry<String, byte[]> entry : spilled.entrySet()) {
+            byte[] key = entry.getKey().getBytes(UTF_8);
+            entries.put(key, entry.getValue());
+            size += 8 + key.length + entry.getValue().length;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile access = null;
+        try {
+            access = new RandomAccessFile(temp, "rw");
+            access.setLength(size);
+            MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(entries.size());
+            for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                buffer.putInt(entry.getKey().length).put(entry.getKey());
+                buffer.putInt(entry.getValue().length).put(entry.getValue());
+            }
+            close(access);
+            access = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot rename " + temp);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LogicStateStore.class.getSimpleName(), "Cannot write " + file, e);
+            temp.delete();
+            return false;
+        } finally {
+            close(access);
+        }
+    }
+
+    private static void close(RandomAccessFile access) {
+        if (access != null) {
+            try {
+                access.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.racofix.basic.mvp;
+
+/**
+ * 通过 {@link LogicImpl#execute(LogicTask)} 提交的后台任务
+ *
+ * @param <R> 结果类型
+ */
+public abstract class LogicTask<R> {
+
+    /**
+     * 在后台线程执行
+     */
+    protected abstract R doInBackground() throws Exception;
+
+    /**
+     * 在主线程执行, 只在 Vo 仍然绑定时回调
+     */
+    protected abstract void onResult(R result);
+
+    /**
+     * 在主线程执行, 只在 Vo 仍然绑定时回调
+     */
+    protected void onError(Throwable throwable) {
+    }
+}
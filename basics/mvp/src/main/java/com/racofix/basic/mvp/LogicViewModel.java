@@ -5,6 +5,12 @@ import android.arch.lifecycle.ViewModel;
 public final class LogicViewModel<T extends LogicI> extends ViewModel {
 
     private T mLogicImpl;
+    private boolean mCleared;
+    /**
+     * ASYNC 方式创建中, 配置变更后重建的页面复用同一次创建
+     */
+    private boolean mCreating;
+    private LogicDelegate<T> mWaiting;
 
     void setLogicImpl(T mLogic) {
         if (this.mLogicImpl == null && mLogic != null) {
@@ -13,13 +19,62 @@ public final class LogicViewModel<T extends LogicI> extends ViewModel {
         }
     }
 
+    /**
+     * 接管已执行过 onLogicCreated 的实例, 如预加载或后台创建的 Logic
+     */
+    boolean adoptLogicImpl(T logic) {
+        if (this.mCleared || this.mLogicImpl != null) {
+            return false;
+        }
+        this.mLogicImpl = logic;
+        return true;
+    }
+
     T getLogicImpl() {
         return this.mLogicImpl;
     }
 
+    boolean isCreating() {
+        return this.mCreating;
+    }
+
+    void startCreating(LogicDelegate<T> waiting) {
+        this.mCreating = true;
+        this.mWaiting = waiting;
+    }
+
+    void await(LogicDelegate<T> waiting) {
+        this.mWaiting = waiting;
+    }
+
+    void stopWaiting(LogicDelegate<T> waiting) {
+        if (this.mWaiting == waiting) {
+            this.mWaiting = null;
+        }
+    }
+
+    /**
+     * 后台创建完成, 在主线程调用, logic 为 null 表示页面没有标注 @Implement 或创建失败
+     */
+    void onCreated(T logic) {
+        this.mCreating = false;
+        LogicDelegate<T> waiting = this.mWaiting;
+        this.mWaiting = null;
+        if (logic == null) return;
+        if (!this.adoptLogicImpl(logic)) {
+            logic.onLogicDestroy();
+            return;
+        }
+        if (waiting != null) {
+            waiting.bind();
+        }
+    }
+
     @Override
     protected void onCleared() {
         super.onCleared();
+        this.mCleared = true;
+        this.mWaiting = null;
         if (this.mLogicImpl != null) {
             this.mLogicImpl.onLogicDestroy();
             this.mLogicImpl = null;
@@ -0,0 +1,11 @@
+package com.racofix.basic.mvp;
+
+/**
+ * 接收 {@link ViewStateChannel} 状态快照的 Vo
+ *
+ * @param <S> 不可变的页面状态
+ */
+public interface StateVo<S> extends LogicI.Vo {
+
+    void render(S state);
+}
@@ -0,0 +1,82 @@
+package com.racofix.basic.mvp;
+
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logic 到 Vo 的状态通道, 通过 {@link LogicImpl#newStateChannel()} 创建.
+ * <p>
+ * 任意线程都可以 publish 不可变的状态快照, 每一帧只把最新的状态交给 {@link StateVo#render(Object)},
+ * 中间状态被合并丢弃. Vo 未绑定时不回调, 重新绑定后补发最新状态.
+ *
+ * @param <S> 不可变的页面状态
+ */
+public final class ViewStateChannel<S> implements Choreographer.FrameCallback {
+
+    private final LogicI<?> owner;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(ViewStateChannel.this);
+        }
+    };
+    private volatile S latest;
+
+    ViewStateChannel(LogicI<?> owner) {
+        this.owner = owner;
+    }
+
+    public void publish(S state) {
+        this.latest = state;
+        this.dirty.set(true);
+        this.schedule();
+    }
+
+    /**
+     * 最近一次 publish 的状态
+     */
+    public S latest() {
+        return this.latest;
+    }
+
+    void onVoBound() {
+        if (this.latest != null) {
+            this.dirty.set(true);
+            this.schedule();
+        }
+    }
+
+    void clear() {
+        this.latest = null;
+        this.dirty.set(false);
+    }
+
+    private void schedule() {
+        if (!this.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        //Choreographer 按 Looper 区分实例, 只能在主线程获取
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            this.scheduleFrame.run();
+        } else {
+            LogicExecutors.MAIN.post(this.scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        this.scheduled.set(false);
+        LogicI.Vo vo = this.owner.getVo();
+        if (!(vo instanceof StateVo) || !this.dirty.compareAndSet(true, false)) {
+            return;
+        }
+        S state = this.latest;
+        if (state != null) {
+            ((StateVo<S>) vo).render(state);
+        }
+    }
+}
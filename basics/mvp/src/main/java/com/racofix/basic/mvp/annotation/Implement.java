@@ -9,4 +9,21 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Implement {
     Class value();
+
+    Mode mode() default Mode.EAGER;
+
+    enum Mode {
+        /**
+         * 在 onCreate/onViewCreated 中同步创建
+         */
+        EAGER,
+        /**
+         * 第一次调用 getLogicImpl() 时创建
+         */
+        LAZY,
+        /**
+         * 在后台线程创建并执行 onLogicCreated, 完成后回到主线程绑定, 期间 getLogicImpl() 返回 null
+         */
+        ASYNC
+    }
 }
@@ -0,0 +1,102 @@
+package com.racofix.basic.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一种事件类型的合并窗口, 窗口内第一个事件到达时开始计时, 结束时交给 EventBus 统一发布
+ */
+final class Coalescer implements Runnable {
+
+    /**
+     * ACCUMULATE 单个窗口最多收集的事件数, 达到后立即交给合并线程发布
+     */
+    static final int MAX_BATCH = 1024;
+
+    private final EventBus bus;
+    private final Class<?> type;
+    private final Coalescing policy;
+    private final long windowMills;
+    private final ScheduledExecutorService scheduler;
+
+    private Object latest;
+    /**
+     * LATEST 窗口中有事件, 事件本身可以是 null
+     */
+    private boolean pending;
+    private List<Object> events = new ArrayList<>();
+    private boolean scheduled;
+    /**
+     * 批次已满, 已提交立即发布的任务
+     */
+    private boolean flushing;
+
+    Coalescer(EventBus bus, Class<?> type, Coalescing policy, long windowMills, ScheduledExecutorService scheduler) {
+        this.bus = bus;
+        this.type = type;
+        this.policy = policy;
+        this.windowMills = windowMills;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * ACCUMULATE 不替换原来的事件, 按类型注册的订阅者仍然逐个收到
+     */
+    boolean accumulates() {
+        return this.policy == Coalescing.ACCUMULATE;
+    }
+
+    void offer(Object event) {
+        boolean flush = false;
+        synchronized (this) {
+            if (this.policy == Coalescing.LATEST) {
+                this.latest = event;
+                this.pending = true;
+            } else {
+                this.events.add(event);
+            }
+            boolean full = this.events.size() >= MAX_BATCH;
+            if (full && !this.flushing) {
+                this.flushing = true;
+                flush = true;
+            } else if (!full && !this.scheduled) {
+                this.scheduled = true;
+                this.scheduler.schedule(this, this.windowMills, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flush) {
+            this.scheduler.execute(this);
+        }
+    }
+
+    /**
+     * 窗口结束或被移除时调用, 没有待发布事件时什么也不做
+     */
+    @Override
+    public void run() {
+        Object latest;
+        boolean pending;
+        List<Object> events;
+        synchronized (this) {
+            this.scheduled = false;
+            this.flushing = false;
+            latest = this.latest;
+            pending = this.pending;
+            events = this.events;
+            this.latest = null;
+            this.pending = false;
+            if (!events.isEmpty()) {
+                this.events = new ArrayList<>();
+            }
+        }
+        if (this.policy == Coalescing.LATEST) {
+            if (pending) {
+                this.bus.flush(this.type, latest);
+            }
+        } else if (!events.isEmpty()) {
+            this.bus.flushBatch(this.type, new EventBatch(this.type, events));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.racofix.basic.pattern.observer;
+
+/**
+ * 同一事件类型在一个时间窗口内的合并方式, 见 {@link EventBus#coalesce(Class, Coalescing, long)}
+ */
+public enum Coalescing {
+    /**
+     * 窗口结束时只发布最后一个事件
+     */
+    LATEST,
+    /**
+     * 窗口结束时把所有事件合并成一个 {@link EventBatch}, 发给 registerBatch 的订阅者; 按类型注册的订阅者仍逐个收到事件
+     */
+    ACCUMULATE
+}
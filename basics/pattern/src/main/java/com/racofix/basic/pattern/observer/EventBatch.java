@@ -0,0 +1,38 @@
+package com.racofix.basic.pattern.observer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个合并窗口内按发布顺序收集的同类型事件
+ */
+public final class EventBatch<E> {
+
+    private final Class<E> type;
+    private final List<E> events;
+
+    EventBatch(Class<E> type, List<E> events) {
+        this.type = type;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public Class<E> type() {
+        return this.type;
+    }
+
+    public List<E> events() {
+        return this.events;
+    }
+
+    public int size() {
+        return this.events.size();
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatch{" +
+                "type=" + this.type.getName() +
+                ", size=" + this.events.size() +
+                '}';
+    }
+}
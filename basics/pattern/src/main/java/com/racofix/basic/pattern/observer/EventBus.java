@@ -1,17 +1,80 @@
 package com.racofix.basic.pattern.observer;
 
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * EventBus - 被观察者/主题
+ * <p>
+ * 订阅者按事件类型或主题(topic)索引, 每个索引是写时复制的数组. register/unregister 加锁并替换数组,
+ * 发布时不加锁也不创建迭代器, 只通知对该类型(含父类和接口)或主题感兴趣的订阅者.
+ * 事件类型对应的订阅者数组合并后缓存, 订阅变化时整体失效, 发布时不使用反射.
+ * 非 POSTING 的订阅者通过各自 ThreadMode 的有界队列回调, 发布线程不会被慢的订阅者阻塞.
+ * 所有 ThreadMode 下订阅者抛出的 RuntimeException 都只记录日志, 不影响其他订阅者, 也不会抛给发布者.
+ * 绑定 Lifecycle 或弱引用的订阅者不会因为忘记 unregister 而泄漏, 已回收的订阅在发布时顺带移除.
+ * 高频事件可以按类型设置合并窗口, 每个窗口只回调一次.
  *
  * @param <T> 观察对象
  */
 public class EventBus<T> {
 
+    private static final Subscription[] EMPTY = new Subscription[0];
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int ASYNC_THREADS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    /**
+     * 事件类型 -> 自身、父类和所有接口, 所有实例共享
+     */
+    private static final ConcurrentHashMap<Class<?>, Class<?>[]> HIERARCHY = new ConcurrentHashMap<>();
+
     private static volatile EventBus defaultInstance;
-    private List<Subscriber> subscribers = new ArrayList<>();
+    private final ConcurrentHashMap<Class<?>, Subscription[]> types = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Subscription[]> topics = new ConcurrentHashMap<>();
+    /**
+     * 事件类型 -> registerBatch 的订阅者, 只匹配相同类型
+     */
+    private final ConcurrentHashMap<Class<?>, Subscription[]> batches = new ConcurrentHashMap<>();
+    /**
+     * 事件类型 -> 合并窗口, 只匹配相同类型
+     */
+    private final ConcurrentHashMap<Class<?>, Coalescer> coalescers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    /**
+     * 事件类型 -> 合并后的订阅者, 订阅变化时替换为新的空表
+     */
+    private volatile ConcurrentHashMap<Class<?>, Subscription[]> dispatchCache = new ConcurrentHashMap<>();
+    /**
+     * 订阅者的 identityHashCode -> 订阅, 按引用去重且不持有弱引用的订阅者, 只在持有锁时访问
+     */
+    private final Map<Integer, List<Subscription>> registrations = new HashMap<>();
+    /**
+     * 事件类型 -> 最新的粘性事件
+     */
+    private final ConcurrentHashMap<Class<?>, Object> stickyEvents = new ConcurrentHashMap<>();
+    /**
+     * 按 ThreadMode 序号保存, 第一次有对应订阅时创建
+     */
+    private final Poster[] posters = new Poster[ThreadMode.values().length];
 
     public static <T> EventBus<T> getDefault() {
         if (defaultInstance == null) {
@@ -28,25 +91,541 @@ public class EventBus<T> {
     private EventBus() {
     }
 
+    /**
+     * 接收所有事件, 等同于 register(Object.class, observer)
+     */
     public void register(Subscriber observer) {
+        this.register(Object.class, observer);
+    }
+
+    public <E> void register(Class<E> eventType, Subscriber<? super E> observer) {
+        this.register(eventType, observer, ThreadMode.POSTING);
+    }
+
+    /**
+     * 接收 eventType 及其子类的事件
+     */
+    public <E> void register(Class<E> eventType, Subscriber<? super E> observer, ThreadMode mode) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType == null");
+        }
+        this.add(eventType, observer, false, mode);
+    }
+
+    /**
+     * 只弱引用订阅者, 订阅者被回收后自动取消订阅; 匿名类订阅者需要由调用方持有
+     */
+    public <E> void registerWeak(Class<E> eventType, Subscriber<? super E> observer, ThreadMode mode) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType == null");
+        }
+        this.add(eventType, observer, true, mode);
+    }
+
+    /**
+     * 订阅到 lifecycle 销毁(ON_DESTROY)时自动取消, 可以传入 LogicImpl.bindLifecycle 收到的 Lifecycle.
+     * 订阅者由 lifecycle 持有, EventBus 只弱引用, 需要在主线程调用
+     */
+    public <E> void register(Lifecycle lifecycle, Class<E> eventType, Subscriber<? super E> observer, ThreadMode mode) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType == null");
+        }
+        this.bind(lifecycle, eventType, observer, mode);
+    }
+
+    public void register(Lifecycle lifecycle, String topic, Subscriber observer, ThreadMode mode) {
+        if (topic == null) {
+            throw new NullPointerException("topic == null");
+        }
+        this.bind(lifecycle, topic, observer, mode);
+    }
+
+    private void bind(Lifecycle lifecycle, Object key, Subscriber observer, ThreadMode mode) {
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        Subscription subscription = this.add(key, observer, true, mode);
+        if (subscription != null) {
+            lifecycle.addObserver(new LifecycleBinding(this, lifecycle, subscription, observer));
+        }
+    }
+
+    /**
+     * 接收 eventType 按 {@link Coalescing#ACCUMULATE} 合并后的事件
+     */
+    public <E> void registerBatch(Class<E> eventType, Subscriber<EventBatch<E>> observer, ThreadMode mode) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType == null");
+        }
+        this.add(new BatchKey(eventType), observer, false, mode);
+    }
+
+    /**
+     * 注册后立即收到 eventType 及其子类已发布的最新粘性事件
+     */
+    public <E> void registerSticky(Class<E> eventType, Subscriber<? super E> observer, ThreadMode mode) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType == null");
+        }
+        Subscription subscription = this.add(eventType, observer, false, mode);
+        if (subscription == null) {
+            return;
+        }
+        for (Map.Entry<Class<?>, Object> entry : this.stickyEvents.entrySet()) {
+            if (eventType.isAssignableFrom(entry.getKey())) {
+                this.dispatch(new Subscription[]{subscription}, entry.getValue());
+            }
+        }
+    }
+
+    public void register(String topic, Subscriber observer) {
+        this.register(topic, observer, ThreadMode.POSTING);
+    }
+
+    /**
+     * 接收通过 publish(topic, event) 发布到该主题的所有事件
+     */
+    public void register(String topic, Subscriber observer, ThreadMode mode) {
+        if (topic == null) {
+            throw new NullPointerException("topic == null");
+        }
+        this.add(topic, observer, false, mode);
+    }
+
+    /**
+     * 取消该订阅者的所有事件类型和主题
+     */
+    public synchronized void unregister(Subscriber observer) {
+        List<Subscription> subscriptions = this.registrations.get(System.identityHashCode(observer));
+        if (subscriptions == null)
+            return;
+        for (Subscription subscription : subscriptions.toArray(new Subscription[subscriptions.size()])) {
+            if (subscription.get() == observer) {
+                this.remove(subscription);
+            }
+        }
+    }
+
+    public synchronized <E> void unregister(Class<E> eventType, Subscriber<? super E> observer) {
+        Subscription subscription = this.find(eventType, observer);
+        if (subscription != null) {
+            this.remove(subscription);
+        }
+    }
+
+    public synchronized void unregister(String topic, Subscriber observer) {
+        Subscription subscription = this.find(topic, observer);
+        if (subscription != null) {
+            this.remove(subscription);
+        }
+    }
+
+    public void notifyObservers(T item) {
+        this.publish(item);
+    }
+
+    /**
+     * 通知注册了事件类型、父类或接口的订阅者; event 为 null 时只通知 register(Subscriber) 注册的订阅者
+     */
+    public void publish(Object event) {
+        Class<?> eventType = event != null ? event.getClass() : Object.class;
+        Coalescer coalescer = this.coalescers.get(eventType);
+        if (coalescer != null) {
+            coalescer.offer(event);
+            if (!coalescer.accumulates()) {
+                return;
+            }
+        }
+        this.dispatch(this.snapshot(eventType), event);
+    }
+
+    /**
+     * 按顺序发布一批事件, 连续的同类型事件只查找一次订阅者
+     */
+    public void publishAll(Collection<?> events) {
+        Class<?> lastType = null;
+        Coalescer coalescer = null;
+        Subscription[] snapshot = null;
+        for (Object event : events) {
+            Class<?> eventType = event != null ? event.getClass() : Object.class;
+            if (eventType != lastType) {
+                lastType = eventType;
+                coalescer = this.coalescers.get(eventType);
+                snapshot = coalescer == null || coalescer.accumulates() ? this.snapshot(eventType) : null;
+            }
+            if (coalescer != null) {
+                coalescer.offer(event);
+            }
+            if (snapshot != null) {
+                this.dispatch(snapshot, event);
+            }
+        }
+    }
+
+    /**
+     * eventType 的事件在 windowMills 内合并: LATEST 只发布最后一个, ACCUMULATE 合并成 EventBatch.
+     * 只匹配相同类型, 不包括子类; 窗口结束时在合并线程发布, POSTING 订阅者也在该线程回调.
+     * ACCUMULATE 的 EventBatch 只发给 registerBatch 的订阅者, 按类型(含父类)注册的订阅者仍然逐个收到原来的事件
+     */
+    public void coalesce(Class<?> eventType, Coalescing policy, long windowMills) {
+        if (eventType == null || policy == null) {
+            throw new NullPointerException("eventType == null || policy == null");
+        }
+        if (windowMills <= 0) {
+            throw new IllegalArgumentException("windowMills <= 0");
+        }
+        Coalescer previous;
+        synchronized (this) {
+            if (this.scheduler == null) {
+                this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "EventBus coalesce");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            previous = this.coalescers.put(eventType,
+                    new Coalescer(this, eventType, policy, windowMills, this.scheduler));
+        }
+        //在锁外发布, 订阅者回调中可以继续注册
+        if (previous != null) {
+            previous.run();
+        }
+    }
+
+    /**
+     * 取消合并, 立即发布窗口中尚未发布的事件
+     */
+    public void removeCoalesce(Class<?> eventType) {
+        Coalescer coalescer = this.coalescers.remove(eventType);
+        if (coalescer != null) {
+            coalescer.run();
+        }
+    }
+
+    void flush(Class<?> eventType, Object event) {
+        this.dispatch(this.snapshot(eventType), event);
+    }
+
+    void flushBatch(Class<?> eventType, EventBatch<?> batch) {
+        Subscription[] snapshot = this.batches.get(eventType);
+        if (snapshot != null) {
+            this.dispatch(snapshot, batch);
+        }
+    }
+
+    private Subscription[] snapshot(Class<?> eventType) {
+        ConcurrentHashMap<Class<?>, Subscription[]> cache = this.dispatchCache;
+        Subscription[] snapshot = cache.get(eventType);
+        if (snapshot == null) {
+            snapshot = this.collect(eventType);
+            cache.put(eventType, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 保存为该类型的最新粘性事件后发布
+     */
+    public void publishSticky(Object event) {
+        if (event == null) {
+            throw new NullPointerException("event == null");
+        }
+        this.stickyEvents.put(event.getClass(), event);
+        this.publish(event);
+    }
+
+    public <E> E getSticky(Class<E> eventType) {
+        return eventType.cast(this.stickyEvents.get(eventType));
+    }
+
+    public <E> E removeSticky(Class<E> eventType) {
+        return eventType.cast(this.stickyEvents.remove(eventType));
+    }
+
+    /**
+     * 因队列已满被丢弃的事件数
+     */
+    public synchronized long droppedEvents() {
+        long dropped = 0;
+        for (Poster poster : this.posters) {
+            if (poster != null) {
+                dropped += poster.dropped();
+            }
+        }
+        return dropped;
+    }
+
+    public void publish(String topic, Object event) {
+        Subscription[] snapshot = this.topics.get(topic);
+        if (snapshot != null) {
+            this.dispatch(snapshot, event);
+        }
+    }
+
+    private void dispatch(Subscription[] snapshot, Object event) {
+        boolean stale = false;
+        for (int i = 0; i < snapshot.length; i++) {
+            Subscription subscription = snapshot[i];
+            Subscriber subscriber = subscription.get();
+            if (subscriber == null) {
+                stale = true;
+            } else if (subscription.poster == null || subscription.mode == ThreadMode.MAIN
+                    && subscription.poster.isEmpty() && Looper.myLooper() == Looper.getMainLooper()) {
+                //主线程队列中还有事件时入队, 保持发布顺序
+                this.deliver(subscriber, event);
+            } else {
+                subscription.poster.enqueue(subscription, event);
+            }
+        }
+        if (stale) {
+            this.purge(snapshot);
+        }
+    }
+
+    void deliver(Subscriber subscriber, Object event) {
+        try {
+            subscriber.onUpdate(this, event);
+        } catch (RuntimeException e) {
+            Log.e(EventBus.class.getSimpleName(), "Could not dispatch event to " + subscriber, e);
+        }
+    }
+
+    /**
+     * 移除弱引用已被回收的订阅, 只在发布时发现后调用
+     */
+    private synchronized void purge(Subscription[] snapshot) {
+        for (Subscription subscription : snapshot) {
+            if (subscription.get() == null) {
+                this.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * @return 新增的订阅, 已经注册过时返回 null
+     */
+    private synchronized Subscription add(Object key, Subscriber observer, boolean weak, ThreadMode mode) {
         if (observer == null) {
             throw new NullPointerException("observer == null");
         }
+        if (mode == null) {
+            throw new NullPointerException("mode == null");
+        }
+        if (this.find(key, observer) != null)
+            return null;
 
-        synchronized (this) {
-            if (!subscribers.contains(observer))
-                this.subscribers.add(observer);
+        Subscription subscription = new Subscription(key, observer, weak, mode, this.poster(mode));
+        List<Subscription> subscriptions = this.registrations.get(subscription.identity);
+        if (subscriptions == null) {
+            subscriptions = new ArrayList<>(2);
+            this.registrations.put(subscription.identity, subscriptions);
         }
+        subscriptions.add(subscription);
+        Subscription[] current = this.get(key);
+        Subscription[] next = new Subscription[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = subscription;
+        this.put(key, next);
+        if (key instanceof Class) {
+            this.dispatchCache = new ConcurrentHashMap<>();
+        }
+        return subscription;
     }
 
-    public synchronized void unregister(Subscriber<T> observer) {
-        this.subscribers.remove(observer);
+    private Poster poster(ThreadMode mode) {
+        if (mode == ThreadMode.POSTING) {
+            return null;
+        }
+        Poster poster = this.posters[mode.ordinal()];
+        if (poster != null) {
+            return poster;
+        }
+        switch (mode) {
+            case MAIN:
+                final Handler handler = new Handler(Looper.getMainLooper());
+                poster = new Poster(this, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        handler.post(command);
+                    }
+                }, QUEUE_CAPACITY, 1);
+                break;
+            case BACKGROUND:
+                poster = new Poster(this, newExecutor("EventBus background", 1), QUEUE_CAPACITY, 1);
+                break;
+            default:
+                poster = new Poster(this, newExecutor("EventBus async", ASYNC_THREADS), QUEUE_CAPACITY, ASYNC_THREADS);
+                break;
+        }
+        this.posters[mode.ordinal()] = poster;
+        return poster;
     }
 
-    public void notifyObservers(T item) {
-        for (Subscriber<T> subscriber : subscribers) {
-            subscriber.onUpdate(this, item);
+    /**
+     * Poster 自己限制提交的任务数, 线程池队列不会堆积
+     */
+    private static ExecutorService newExecutor(final String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private Subscription find(Object key, Subscriber observer) {
+        List<Subscription> subscriptions = this.registrations.get(System.identityHashCode(observer));
+        if (subscriptions != null) {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.get() == observer && subscription.key.equals(key)) {
+                    return subscription;
+                }
+            }
         }
+        return null;
     }
 
+    private synchronized void remove(Subscription subscription) {
+        if (!subscription.active)
+            return;
+        subscription.active = false;
+        List<Subscription> subscriptions = this.registrations.get(subscription.identity);
+        subscriptions.remove(subscription);
+        if (subscriptions.isEmpty()) {
+            this.registrations.remove(subscription.identity);
+        }
+
+        Object key = subscription.key;
+        Subscription[] current = this.get(key);
+        int index = 0;
+        while (current[index] != subscription) {
+            index++;
+        }
+        Subscription[] next = current.length == 1 ? EMPTY : new Subscription[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        this.put(key, next);
+        if (key instanceof Class) {
+            this.dispatchCache = new ConcurrentHashMap<>();
+        }
+    }
+
+    private Subscription[] get(Object key) {
+        Subscription[] current;
+        if (key instanceof Class) current = this.types.get(key);
+        else if (key instanceof BatchKey) current = this.batches.get(((BatchKey) key).type);
+        else current = this.topics.get(key);
+        return current != null ? current : EMPTY;
+    }
+
+    private void put(Object key, Subscription[] subscribers) {
+        if (key instanceof Class) {
+            if (subscribers.length == 0) this.types.remove(key);
+            else this.types.put((Class<?>) key, subscribers);
+        } else if (key instanceof BatchKey) {
+            Class<?> type = ((BatchKey) key).type;
+            if (subscribers.length == 0) this.batches.remove(type);
+            else this.batches.put(type, subscribers);
+        } else {
+            if (subscribers.length == 0) this.topics.remove(key);
+            else this.topics.put((String) key, subscribers);
+        }
+    }
+
+    /**
+     * 合并事件类型层级上的订阅者, 同一订阅者注册了多个层级时只通知一次
+     */
+    private Subscription[] collect(Class<?> eventType) {
+        Set<Subscriber> merged = Collections.newSetFromMap(new IdentityHashMap<Subscriber, Boolean>());
+        List<Subscription> ordered = new ArrayList<>();
+        for (Class<?> type : hierarchy(eventType)) {
+            Subscription[] subscribers = this.types.get(type);
+            if (subscribers == null) {
+                continue;
+            }
+            for (Subscription subscription : subscribers) {
+                //已回收的订阅保留在数组中, 由 dispatch 发现并移除
+                Subscriber subscriber = subscription.get();
+                if (subscriber == null || merged.add(subscriber)) {
+                    ordered.add(subscription);
+                }
+            }
+        }
+        return ordered.isEmpty() ? EMPTY : ordered.toArray(new Subscription[ordered.size()]);
+    }
+
+    private static Class<?>[] hierarchy(Class<?> eventType) {
+        Class<?>[] types = HIERARCHY.get(eventType);
+        if (types != null) {
+            return types;
+        }
+        Set<Class<?>> collected = new LinkedHashSet<>();
+        for (Class<?> type = eventType; type != null; type = type.getSuperclass()) {
+            collected.add(type);
+            addInterfaces(collected, type.getInterfaces());
+        }
+        types = collected.toArray(new Class<?>[collected.size()]);
+        Class<?>[] previous = HIERARCHY.putIfAbsent(eventType, types);
+        return previous != null ? previous : types;
+    }
+
+    private static void addInterfaces(Set<Class<?>> collected, Class<?>[] interfaces) {
+        for (Class<?> type : interfaces) {
+            if (collected.add(type)) {
+                addInterfaces(collected, type.getInterfaces());
+            }
+        }
+    }
+
+    /**
+     * registerBatch 的索引键, 与同类型的普通订阅区分
+     */
+    private static final class BatchKey {
+        final Class<?> type;
+
+        BatchKey(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BatchKey && ((BatchKey) o).type == this.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.type.hashCode();
+        }
+    }
+
+    /**
+     * 由 Lifecycle 持有, 使订阅者与页面同生命周期
+     */
+    private static final class LifecycleBinding implements LifecycleObserver {
+        private final EventBus bus;
+        private final Lifecycle lifecycle;
+        private final Subscription subscription;
+        //只用于持有订阅者, EventBus 中是弱引用
+        private final Subscriber observer;
+
+        LifecycleBinding(EventBus bus, Lifecycle lifecycle, Subscription subscription, Subscriber observer) {
+            this.bus = bus;
+            this.lifecycle = lifecycle;
+            this.subscription = subscription;
+            this.observer = observer;
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        public void onDestroy() {
+            this.lifecycle.removeObserver(this);
+            this.bus.remove(this.subscription);
+        }
+    }
 }
@@ -19,7 +19,7 @@ public class ObserverExampleTest {
         };
 
         EventBus.getDefault().register(observer1);
-        EventBus.getDefault().register(observer2);
+        EventBus.getDefault().register(MagazineBo.class, observer2);
 
         MagazineBo magazineBo1 = new MagazineBo("新西兰海底惊险'巨型'蠕虫, 长约8米移动缓慢");
         EventBus.getDefault().notifyObservers(magazineBo1);
@@ -0,0 +1,90 @@
+package com.racofix.basic.pattern.observer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一种 ThreadMode 的有界事件队列, 最多 concurrency 个任务同时在 executor 上取出并回调.
+ * 队列满时丢弃最旧的事件, 发布线程不会因为订阅者处理慢而阻塞.
+ */
+final class Poster implements Runnable {
+
+    /**
+     * 单个任务连续回调的最长时间, 超过后重新提交, 避免长时间占用主线程
+     */
+    private static final long MAX_DRAIN_NANOS = 10 * 1000 * 1000;
+
+    private final EventBus bus;
+    private final Executor executor;
+    private final int capacity;
+    private final int concurrency;
+    private final ConcurrentLinkedQueue<Object[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    Poster(EventBus bus, Executor executor, int capacity, int concurrency) {
+        this.bus = bus;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.concurrency = concurrency;
+    }
+
+    void enqueue(Subscription subscription, Object event) {
+        this.queue.offer(new Object[]{subscription, event});
+        if (this.size.incrementAndGet() > this.capacity && this.queue.poll() != null) {
+            this.size.decrementAndGet();
+            this.dropped.incrementAndGet();
+        }
+        this.schedule();
+    }
+
+    /**
+     * 没有等待回调的事件
+     */
+    boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+
+    long dropped() {
+        return this.dropped.get();
+    }
+
+    private void schedule() {
+        for (int current = this.running.get(); current < this.concurrency; current = this.running.get()) {
+            if (this.running.compareAndSet(current, current + 1)) {
+                this.executor.execute(this);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + MAX_DRAIN_NANOS;
+        while (true) {
+            Object[] pending = this.queue.poll();
+            if (pending == null) {
+                this.running.decrementAndGet();
+                //退出前有新事件入队且没有其他任务在取时继续处理
+                if (this.queue.isEmpty()) {
+                    return;
+                }
+                this.schedule();
+                return;
+            }
+            this.size.decrementAndGet();
+            Subscription subscription = (Subscription) pending[0];
+            Subscriber subscriber = subscription.get();
+            if (subscription.active && subscriber != null) {
+                this.bus.deliver(subscriber, pending[1]);
+            }
+            if (System.nanoTime() > deadline) {
+                this.executor.execute(this);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.racofix.basic.pattern.observer;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * 订阅者与接收线程, 按事件类型或主题保存在 EventBus 的数组中
+ */
+final class Subscription {
+
+    /**
+     * 事件类型 Class 或主题 String
+     */
+    final Object key;
+    final int identity;
+    final ThreadMode mode;
+    /**
+     * POSTING 为 null
+     */
+    final Poster poster;
+    private final Subscriber strong;
+    private final WeakReference<Subscriber> weak;
+    /**
+     * 取消订阅后队列中尚未回调的事件不再回调
+     */
+    volatile boolean active = true;
+
+    Subscription(Object key, Subscriber subscriber, boolean weak, ThreadMode mode, Poster poster) {
+        this.key = key;
+        this.identity = System.identityHashCode(subscriber);
+        this.mode = mode;
+        this.poster = poster;
+        this.strong = weak ? null : subscriber;
+        this.weak = weak ? new WeakReference<>(subscriber) : null;
+    }
+
+    /**
+     * @return 弱引用的订阅者已被回收时返回 null
+     */
+    Subscriber get() {
+        return this.strong != null ? this.strong : this.weak.get();
+    }
+}
@@ -0,0 +1,23 @@
+package com.racofix.basic.pattern.observer;
+
+/**
+ * 订阅者接收事件的线程
+ */
+public enum ThreadMode {
+    /**
+     * 在发布线程直接回调
+     */
+    POSTING,
+    /**
+     * 在主线程回调, 发布线程就是主线程且没有排队的事件时直接回调
+     */
+    MAIN,
+    /**
+     * 在共享的后台线程按发布顺序依次回调
+     */
+    BACKGROUND,
+    /**
+     * 在线程池中并发回调, 不保证顺序
+     */
+    ASYNC
+}
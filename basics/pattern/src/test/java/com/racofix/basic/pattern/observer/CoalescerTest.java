@@ -0,0 +1,158 @@
+package com.racofix.basic.pattern.observer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoalescerTest {
+
+    private static final class Tick {
+        final int value;
+
+        Tick(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Sample {
+    }
+
+    private final EventBus<Object> bus = EventBus.getDefault();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        this.bus.removeCoalesce(Tick.class);
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    public void latest_publishesLastEventOncePerWindow() throws Exception {
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        Subscriber<Object> subscriber = new Subscriber<Object>() {
+            @Override
+            public void onUpdate(EventBus<Object> observable, Object item) {
+                received.add(((Tick) item).value);
+                delivered.countDown();
+            }
+        };
+        this.bus.register(Tick.class, subscriber);
+        try {
+            this.bus.coalesce(Tick.class, Coalescing.LATEST, 100);
+            for (int i = 1; i <= 5; i++) {
+                this.bus.publish(new Tick(i));
+            }
+            assertTrue(received.isEmpty());
+            assertTrue(delivered.await(1, TimeUnit.SECONDS));
+            Thread.sleep(150);
+            assertEquals("[5]", received.toString());
+        } finally {
+            this.bus.unregister(subscriber);
+        }
+    }
+
+    @Test
+    public void latest_deliversNullEvent() {
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        Subscriber<Object> subscriber = new Subscriber<Object>() {
+            @Override
+            public void onUpdate(EventBus<Object> observable, Object item) {
+                received.add(item);
+            }
+        };
+        this.bus.register(Sample.class, subscriber);
+        try {
+            Coalescer coalescer = new Coalescer(this.bus, Sample.class, Coalescing.LATEST, 60000, this.scheduler);
+            coalescer.run();
+            assertTrue(received.isEmpty());
+
+            coalescer.offer(new Sample());
+            coalescer.offer(null);
+            coalescer.run();
+            assertEquals(1, received.size());
+            assertNull(received.get(0));
+
+            coalescer.run();
+            assertEquals(1, received.size());
+        } finally {
+            this.bus.unregister(subscriber);
+        }
+    }
+
+    @Test
+    public void accumulate_fullBatchFlushedOnScheduler() throws Exception {
+        final List<EventBatch<Sample>> batches = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        Subscriber<EventBatch<Sample>> subscriber = new Subscriber<EventBatch<Sample>>() {
+            @Override
+            public void onUpdate(EventBus<EventBatch<Sample>> observable, EventBatch<Sample> item) {
+                batches.add(item);
+                threads.add(Thread.currentThread().getName());
+                delivered.countDown();
+            }
+        };
+        this.bus.registerBatch(Sample.class, subscriber, ThreadMode.POSTING);
+        try {
+            Coalescer coalescer = new Coalescer(this.bus, Sample.class, Coalescing.ACCUMULATE, 60000, this.scheduler);
+            for (int i = 0; i < Coalescer.MAX_BATCH; i++) {
+                coalescer.offer(new Sample());
+            }
+            assertTrue(delivered.await(1, TimeUnit.SECONDS));
+            assertEquals(1, batches.size());
+            assertEquals(Coalescer.MAX_BATCH, batches.get(0).size());
+            assertNotEquals(Thread.currentThread().getName(), threads.get(0));
+
+            for (int i = 0; i < 3; i++) {
+                coalescer.offer(new Sample());
+            }
+            coalescer.run();
+            assertEquals(2, batches.size());
+            assertEquals(3, batches.get(1).size());
+            assertSame(Sample.class, batches.get(1).type());
+        } finally {
+            this.bus.unregister(subscriber);
+        }
+    }
+
+    @Test
+    public void accumulate_typeSubscribersStillReceiveEvents() throws Exception {
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch batched = new CountDownLatch(1);
+        Subscriber<Object> subscriber = new Subscriber<Object>() {
+            @Override
+            public void onUpdate(EventBus<Object> observable, Object item) {
+                received.add(((Tick) item).value);
+            }
+        };
+        Subscriber<EventBatch<Tick>> batchSubscriber = new Subscriber<EventBatch<Tick>>() {
+            @Override
+            public void onUpdate(EventBus<EventBatch<Tick>> observable, EventBatch<Tick> item) {
+                received.add("batch " + item.size());
+                batched.countDown();
+            }
+        };
+        this.bus.register(Tick.class, subscriber);
+        this.bus.registerBatch(Tick.class, batchSubscriber, ThreadMode.POSTING);
+        try {
+            this.bus.coalesce(Tick.class, Coalescing.ACCUMULATE, 50);
+            this.bus.publish(new Tick(1));
+            this.bus.publish(new Tick(2));
+            assertEquals("[1, 2]", received.toString());
+            assertTrue(batched.await(1, TimeUnit.SECONDS));
+            assertEquals("[1, 2, batch 2]", received.toString());
+        } finally {
+            this.bus.unregister(subscriber);
+            this.bus.unregister(batchSubscriber);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.racofix.basic.pattern.observer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PosterTest {
+
+    @Test
+    public void enqueue_dropsOldestWhenFull() {
+        ManualExecutor executor = new ManualExecutor();
+        Poster poster = new Poster(EventBus.getDefault(), executor, 2, 1);
+        Recorder recorder = new Recorder();
+        Subscription subscription = new Subscription(Integer.class, recorder, false, ThreadMode.BACKGROUND, poster);
+
+        for (int i = 1; i <= 4; i++) {
+            poster.enqueue(subscription, i);
+        }
+        assertEquals(2, poster.dropped());
+        assertEquals(1, executor.tasks.size());
+        assertFalse(poster.isEmpty());
+
+        executor.runAll();
+        assertEquals("[3, 4]", recorder.events.toString());
+        assertTrue(poster.isEmpty());
+    }
+
+    @Test
+    public void run_skipsInactiveSubscription() {
+        ManualExecutor executor = new ManualExecutor();
+        Poster poster = new Poster(EventBus.getDefault(), executor, 8, 1);
+        Recorder recorder = new Recorder();
+        Subscription subscription = new Subscription(Integer.class, recorder, false, ThreadMode.BACKGROUND, poster);
+
+        poster.enqueue(subscription, 1);
+        subscription.active = false;
+        poster.enqueue(subscription, 2);
+        executor.runAll();
+        assertTrue(recorder.events.isEmpty());
+        assertEquals(0, poster.dropped());
+    }
+
+    @Test
+    public void schedule_boundedByConcurrency() {
+        ManualExecutor executor = new ManualExecutor();
+        Poster poster = new Poster(EventBus.getDefault(), executor, 8, 2);
+        Recorder recorder = new Recorder();
+        Subscription subscription = new Subscription(Integer.class, recorder, false, ThreadMode.ASYNC, poster);
+
+        for (int i = 0; i < 5; i++) {
+            poster.enqueue(subscription, i);
+        }
+        assertEquals(2, executor.tasks.size());
+        executor.runAll();
+        assertEquals(5, recorder.events.size());
+
+        poster.enqueue(subscription, 5);
+        assertEquals(1, executor.tasks.size());
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.tasks.add(command);
+        }
+
+        void runAll() {
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final class Recorder implements Subscriber<Object> {
+        final List<Object> events = new ArrayList<>();
+
+        @Override
+        public void onUpdate(EventBus<Object> observable, Object item) {
+            this.events.add(item);
+        }
+    }
+}